@@ -0,0 +1,157 @@
+package com.yccc.bytemall.benchmark;
+
+import com.yccc.bytemall.BytemallApplication;
+import com.yccc.bytemall.cache.ItemBloomFilter;
+import com.yccc.bytemall.entity.dto.ItemImportResultDTO;
+import com.yccc.bytemall.index.CategoryIndex;
+import com.yccc.bytemall.index.ItemNameIndex;
+import com.yccc.bytemall.mapper.ItemMapper;
+import com.yccc.bytemall.service.IItemService;
+import com.yccc.bytemall.util.ItemRecordReader;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 基准测试共享环境：启动进程内Redis和Spring容器（bench配置，H2数据库），导入测试商品并预热缓存
+ * 每个fork启动一次
+ */
+@State(Scope.Benchmark)
+public class BenchmarkContext {
+
+    static final int REDIS_PORT = 6390;
+
+    static final int CATEGORY_COUNT = 20;
+
+    @Param({"10000"})
+    public int itemCount;
+
+    private RedisServer redisServer;
+
+    private ConfigurableApplicationContext context;
+
+    IItemService itemService;
+
+    Cache itemCache;
+
+    List<Long> ids;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        redisServer = RedisServer.newRedisServer()
+                .port(REDIS_PORT)
+                .setting("requirepass bench")
+                .build();
+        redisServer.start();
+        // 任一State初始化失败时JMH不会调用TearDown，fork退出时兜底停止Redis，否则占用端口导致后续基准全部失败
+        RedisServer server = redisServer;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop();
+            } catch (IOException ignored) {
+                // 已在TearDown中停止
+            }
+        }));
+
+        // 系统属性优先于application.yaml中的spring.profiles.active
+        System.setProperty("spring.profiles.active", "bench");
+        context = new SpringApplicationBuilder(BytemallApplication.class)
+                .web(WebApplicationType.NONE)
+                .run();
+        itemService = context.getBean(IItemService.class);
+        itemCache = context.getBean(CacheManager.class).getCache("item");
+
+        // 布隆过滤器和类别索引异步初始化，导入前需等待完成
+        ItemBloomFilter itemBloomFilter = context.getBean(ItemBloomFilter.class);
+        await(itemBloomFilter::isReady);
+        seed();
+        // 导入后的索引刷新通过发布订阅异步完成，这里同步重建，保证测试开始时索引完整
+        context.getBean(CategoryIndex.class).initialize();
+        context.getBean(ItemNameIndex.class).initialize();
+        ids = loadIds(context.getBean(ItemMapper.class));
+
+        // 预热全部商品，之后由各基准测试按命中率逐出
+        for (int i = 0; i < ids.size(); i += 500) {
+            itemService.queryItemByIds(ids.subList(i, Math.min(i + 500, ids.size())));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        if (context != null) {
+            context.close();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    /**
+     * 随机选取一个商品，按概率(1 - hitRatio)先逐出其缓存，使本次查询未命中
+     */
+    Long pick(Random random, double hitRatio) {
+        Long id = ids.get(random.nextInt(ids.size()));
+        if (random.nextDouble() >= hitRatio) {
+            itemCache.evict(id);
+        }
+        return id;
+    }
+
+    /**
+     * 通过批量导入接口写入测试商品，商品名称、类别和销量按固定种子生成，保证多次运行数据一致
+     */
+    private void seed() {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder("name,price,stock,brand,description,category\n");
+        for (int i = 0; i < itemCount; i++) {
+            StringJoiner categories = new StringJoiner("|");
+            int categoryCount = 1 + random.nextInt(3);
+            for (int k = 0; k < categoryCount; k++) {
+                categories.add("cat-" + random.nextInt(CATEGORY_COUNT));
+            }
+            csv.append("商品").append(i).append(',')
+                    .append(100 + random.nextInt(100000)).append(',')
+                    .append(random.nextInt(1000)).append(',')
+                    .append("brand-").append(random.nextInt(50)).append(',')
+                    .append("描述").append(i).append(',')
+                    .append(categories).append('\n');
+        }
+        ItemImportResultDTO result = itemService.importItems(
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), ItemRecordReader.Format.CSV);
+        if (result.getFailed() > 0) {
+            throw new IllegalStateException("测试商品导入失败：" + result.getFailures());
+        }
+        // 导入会写入缓存，清空后从全部未命中开始预热
+        itemCache.clear();
+    }
+
+    private static List<Long> loadIds(ItemMapper itemMapper) {
+        List<Long> ids = new ArrayList<>();
+        List<Long> batch;
+        do {
+            batch = itemMapper.selectIdsAfter(ids.isEmpty() ? 0L : ids.get(ids.size() - 1), 5000);
+            ids.addAll(batch);
+        } while (batch.size() == 5000);
+        return ids;
+    }
+
+    private static void await(BooleanSupplier ready) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (!ready.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("基准测试环境初始化超时");
+            }
+            Thread.sleep(100);
+        }
+    }
+}
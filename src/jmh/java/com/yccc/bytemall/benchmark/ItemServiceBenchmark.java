@@ -0,0 +1,135 @@
+package com.yccc.bytemall.benchmark;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.yccc.bytemall.entity.dto.ItemDTO;
+import com.yccc.bytemall.entity.po.Item;
+import com.yccc.bytemall.mapper.ItemMapper;
+import com.yccc.bytemall.service.impl.ItemServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品查询热点路径的基准测试
+ * 命中率通过在每次调用前按概率逐出所查商品的缓存控制，逐出不计入耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ItemServiceBenchmark {
+
+    @State(Scope.Thread)
+    public static class SingleRequest {
+
+        @Param({"0.0", "0.5", "0.9", "1.0"})
+        public double hitRatio;
+
+        private final Random random = new Random(7);
+
+        Long id;
+
+        @Setup(Level.Invocation)
+        public void next(BenchmarkContext context) {
+            id = context.pick(random, hitRatio);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BatchRequest {
+
+        @Param({"0.0", "0.5", "0.9", "1.0"})
+        public double hitRatio;
+
+        @Param({"10", "100"})
+        public int batchSize;
+
+        private final Random random = new Random(7);
+
+        List<Long> ids;
+
+        @Setup(Level.Invocation)
+        public void next(BenchmarkContext context) {
+            ids = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                ids.add(context.pick(random, hitRatio));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PageRequest {
+
+        @Param({"20", "100"})
+        public int pageSize;
+
+        // 页码较大时可以比较类别位图分页与OFFSET分页的差异
+        @Param({"1", "20"})
+        public int page;
+
+        private final Random random = new Random(7);
+
+        String categoryName;
+
+        @Setup(Level.Invocation)
+        public void next() {
+            categoryName = "cat-" + random.nextInt(BenchmarkContext.CATEGORY_COUNT);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ConvertRequest {
+
+        @Param({"1", "10", "100"})
+        public int batchSize;
+
+        List<Item> items;
+
+        Object service;
+
+        Method itemsToItemDTOs;
+
+        @Setup(Level.Trial)
+        public void load(BenchmarkContext context) {
+            Field itemMapperField = ReflectionUtils.findField(ItemServiceImpl.class, "itemMapper");
+            ReflectionUtils.makeAccessible(itemMapperField);
+            ItemMapper itemMapper = (ItemMapper) ReflectionUtils.getField(itemMapperField,
+                    AopTestUtils.getTargetObject(context.itemService));
+            items = itemMapper.selectBatchIds(context.ids.subList(0, batchSize));
+            service = AopTestUtils.getTargetObject(context.itemService);
+            itemsToItemDTOs = ReflectionUtils.findMethod(ItemServiceImpl.class, "itemsToItemDTOs", List.class);
+            ReflectionUtils.makeAccessible(itemsToItemDTOs);
+        }
+    }
+
+    @Benchmark
+    public ItemDTO queryItemById(BenchmarkContext context, SingleRequest request) {
+        return context.itemService.queryItemById(request.id);
+    }
+
+    @Benchmark
+    public List<ItemDTO> queryItemByIds(BenchmarkContext context, BatchRequest request) {
+        return context.itemService.queryItemByIds(request.ids);
+    }
+
+    @Benchmark
+    public Page<ItemDTO> pageQuery(BenchmarkContext context, PageRequest request) {
+        return context.itemService.pageQuery(request.page, request.pageSize, request.categoryName);
+    }
+
+    /**
+     * 商品转换（含类别查询），批量大小为1时即itemToItemDTO
+     */
+    @Benchmark
+    public Object itemToItemDTO(ConvertRequest request) {
+        return ReflectionUtils.invokeMethod(request.itemsToItemDTOs, request.service, request.items);
+    }
+}
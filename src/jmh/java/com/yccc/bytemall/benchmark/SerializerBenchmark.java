@@ -0,0 +1,68 @@
+package com.yccc.bytemall.benchmark;
+
+import com.yccc.bytemall.cache.CachedValue;
+import com.yccc.bytemall.config.RedisConfig;
+import com.yccc.bytemall.entity.dto.ItemDTO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisConfig中缓存值序列化器的基准测试，不依赖Redis和数据库
+ * format=json为原来的带类名JSON，binary为二进制编码
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    @Param({"binary", "json"})
+    public String format;
+
+    @Param({"0", "200", "2000"})
+    public int descriptionLength;
+
+    private RedisSerializer<Object> serializer;
+
+    private CachedValue<ItemDTO> value;
+
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        RedisConfig redisConfig = new RedisConfig();
+        ReflectionTestUtils.setField(redisConfig, "codecFormat", format);
+        ReflectionTestUtils.setField(redisConfig, "compressThreshold", 1024);
+        ReflectionTestUtils.setField(redisConfig, "readLegacyJson", true);
+        serializer = redisConfig.cacheValueSerializer();
+
+        ItemDTO itemDTO = new ItemDTO();
+        itemDTO.setId(100042L);
+        itemDTO.setName("商品100042 轻薄笔记本电脑 14英寸");
+        itemDTO.setPrice(499900);
+        itemDTO.setImage("https://img.example.com/item/100042.jpg");
+        itemDTO.setCategory(Arrays.asList("电脑", "笔记本", "办公"));
+        itemDTO.setBrand("brand-7");
+        itemDTO.setStock(1200);
+        itemDTO.setDescription(String.join("", Collections.nCopies(descriptionLength, "描")));
+        value = CachedValue.of(itemDTO, 5, 30 * 60 * 1000);
+        bytes = serializer.serialize(value);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(bytes);
+    }
+}
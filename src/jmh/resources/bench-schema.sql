@@ -0,0 +1,40 @@
+-- 基准测试用表结构，字段与线上item、category表一致
+create table if not exists item
+(
+    id            bigint auto_increment primary key,
+    name          varchar(200) not null,
+    price         int          not null default 0,
+    stock         int          not null default 0,
+    image         varchar(200),
+    category      varchar(200),
+    brand         varchar(100),
+    spec          varchar(200),
+    sold          int          not null default 0,
+    comment_count int          not null default 0,
+    isAD          tinyint      not null default 0,
+    status        int          not null default 1,
+    create_time   datetime     default current_timestamp,
+    update_time   datetime     default current_timestamp,
+    creater       bigint,
+    updater       bigint,
+    description   varchar(2000)
+);
+
+create table if not exists category
+(
+    id      bigint auto_increment primary key,
+    name    varchar(100) not null,
+    item_id bigint       not null
+);
+
+-- 与src/main/resources/db/item_indexes.sql一致
+create index if not exists idx_category_name_item_id on category (name, item_id);
+create index if not exists idx_category_item_id on category (item_id);
+create index if not exists idx_item_sold_id on item (sold, id);
+
+create table if not exists item_change_outbox
+(
+    id          bigint auto_increment primary key,
+    item_id     bigint   not null,
+    create_time datetime not null default current_timestamp
+);
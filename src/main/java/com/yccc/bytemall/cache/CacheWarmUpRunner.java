@@ -0,0 +1,49 @@
+package com.yccc.bytemall.cache;
+
+import com.yccc.bytemall.service.IItemService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 启动时预热商品缓存
+ * ApplicationRunner在就绪状态（/actuator/health/readiness）变为ACCEPTING_TRAFFIC之前执行，
+ * 预热完成后节点才接入流量，避免发布后热门商品集中穿透到数据库；预热失败只记录日志，不阻止启动
+ */
+@Component
+@Slf4j
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    // 是否在启动时预热
+    @Value("${byte.warm-up.enabled:true}")
+    private boolean enabled;
+
+    // 按热度预热的商品数量
+    @Value("${byte.warm-up.top-n:1000}")
+    private int topN;
+
+    // 每批加载的商品数量
+    @Value("${byte.warm-up.batch-size:200}")
+    private int batchSize;
+
+    @Resource
+    private IItemService itemService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled || topN <= 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            int warmed = itemService.warmUpCache(topN, batchSize);
+            log.info("商品缓存预热完成，共{}个商品，耗时{}ms", warmed, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("商品缓存预热失败，由请求按需加载", e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.yccc.bytemall.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带逻辑过期时间和重建耗时的缓存值，用于在过期前概率性地提前刷新（XFetch）
+ *
+ * @param <T> 缓存值类型
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedValue<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 缓存值
+     */
+    private T value;
+
+    /**
+     * 重建耗时（毫秒）
+     */
+    private long delta;
+
+    /**
+     * 逻辑过期时间（毫秒时间戳）
+     */
+    private long expireAt;
+
+    /**
+     * @param value     缓存值
+     * @param delta     重建耗时（毫秒）
+     * @param ttlMillis 逻辑存活时间（毫秒）
+     */
+    public static <T> CachedValue<T> of(T value, long delta, long ttlMillis) {
+        return new CachedValue<>(value, delta, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * 是否需要提前刷新：越接近过期、重建越慢，返回true的概率越高
+     *
+     * @param beta 大于1时更倾向于提前刷新，小于1时更倾向于推迟刷新
+     */
+    public boolean shouldRefresh(double beta) {
+        // 取值范围(0, 1]，避免log(0)
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return System.currentTimeMillis() - delta * beta * Math.log(random) >= expireAt;
+    }
+}
@@ -0,0 +1,187 @@
+package com.yccc.bytemall.cache;
+
+import com.yccc.bytemall.entity.dto.ItemDTO;
+import com.yccc.bytemall.util.SlidingWindowSketch;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 热点商品探测与本地常驻
+ * 读路径上用滑动窗口频率估计统计每个商品id的访问次数，窗口内超过阈值的id判定为热点；
+ * 热点商品常驻在本节点内存中，不受L1容量淘汰和过期影响，由调用方按较短的间隔定时刷新；
+ * 新发现的热点通过发布订阅广播，其他节点提前将其标记为热点，不必各自等到访问量超过阈值
+ * 热点在最后一次被判定后保持一段时间，期间没有再次达到阈值则降级并移出内存
+ */
+@Component
+@Slf4j
+public class HotItemCache {
+
+    // 热点商品广播频道，消息为商品id
+    static final String HOT_TOPIC = "cache:hot-item";
+
+    // 判定为热点的窗口内访问次数
+    @Value("${byte.hot-key.threshold:500}")
+    private int threshold;
+
+    // 统计窗口的长度（毫秒）
+    @Value("${byte.hot-key.window-ms:10000}")
+    private long windowMillis;
+
+    // 统计窗口划分的桶数
+    @Value("${byte.hot-key.window-buckets:10}")
+    private int windowBuckets;
+
+    // 频率估计每行的计数个数
+    @Value("${byte.hot-key.sketch-width:4096}")
+    private int sketchWidth;
+
+    // 频率估计的行数
+    @Value("${byte.hot-key.sketch-depth:4}")
+    private int sketchDepth;
+
+    // 热点在最后一次被判定后保持的时间（毫秒）
+    @Value("${byte.hot-key.hold-ms:30000}")
+    private long holdMillis;
+
+    // 本节点同时保持的热点数量上限
+    @Value("${byte.hot-key.max-hot-keys:1000}")
+    private int maxHotKeys;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private SlidingWindowSketch sketch;
+
+    private RTopic hotTopic;
+
+    // 热点商品id -> 热点状态的到期时间戳（毫秒）
+    private final ConcurrentMap<Long, Long> hotIds = new ConcurrentHashMap<>();
+
+    // 常驻内存的热点商品
+    private final ConcurrentMap<Long, ItemDTO> pinnedItems = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        sketch = new SlidingWindowSketch(sketchWidth, sketchDepth, windowBuckets);
+        hotTopic = redissonClient.getTopic(HOT_TOPIC, StringCodec.INSTANCE);
+        hotTopic.addListener(String.class, (channel, message) -> promote(Long.valueOf(message), false));
+        // 商品缓存失效时同时移出常驻内存，与L1的跨节点失效保持一致
+        TwoLevelCacheManager.addInvalidateListener(redissonClient, "item", this::onInvalidate);
+        Gauge.builder("item.hot.keys", hotIds, Map::size)
+                .description("本节点当前的热点商品数量")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次访问，达到阈值时标记为热点
+     *
+     * @return 是否为热点
+     */
+    public boolean record(Long id) {
+        if (sketch.increment(id) >= threshold) {
+            promote(id, true);
+            return true;
+        }
+        return hotIds.containsKey(id);
+    }
+
+    /**
+     * 常驻内存中的热点商品，不存在时返回null
+     */
+    public ItemDTO get(Long id) {
+        return pinnedItems.get(id);
+    }
+
+    /**
+     * 热点商品加载完成后放入内存，已降级的商品不放入
+     */
+    public void pin(Long id, ItemDTO itemDTO) {
+        if (hotIds.containsKey(id)) {
+            pinnedItems.put(id, itemDTO);
+        }
+    }
+
+    public void invalidate(Long id) {
+        pinnedItems.remove(id);
+    }
+
+    /**
+     * 当前仍有效的热点id，同时降级已到期的热点
+     */
+    public List<Long> hotIds() {
+        long now = System.currentTimeMillis();
+        List<Long> ids = new ArrayList<>(hotIds.size());
+        hotIds.forEach((id, expireAt) -> {
+            if (expireAt <= now) {
+                hotIds.remove(id, expireAt);
+                pinnedItems.remove(id);
+                log.info("商品{}访问量回落，取消热点", id);
+            } else {
+                ids.add(id);
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * 统计窗口向前滑动一个桶
+     */
+    @Scheduled(fixedRateString = "#{${byte.hot-key.window-ms:10000} / ${byte.hot-key.window-buckets:10}}")
+    public void rotate() {
+        sketch.rotate();
+    }
+
+    /**
+     * 标记为热点，本节点新发现的热点或热点状态过半到期时延长并广播给其他节点
+     * 热点每次访问都会达到阈值，未过半时直接返回，读路径上不写共享的哈希表
+     *
+     * @param broadcast 是否广播，收到其他节点的广播时为false
+     */
+    private void promote(Long id, boolean broadcast) {
+        long now = System.currentTimeMillis();
+        Long previous = hotIds.get(id);
+        if (previous != null && previous - now >= holdMillis / 2) {
+            return;
+        }
+        if (previous == null && hotIds.size() >= maxHotKeys) {
+            return;
+        }
+        hotIds.put(id, now + holdMillis);
+        if (previous == null) {
+            log.info("商品{}成为热点，来源：{}", id, broadcast ? "本节点" : "其他节点");
+        }
+        if (broadcast) {
+            hotTopic.publishAsync(String.valueOf(id));
+        }
+    }
+
+    private void onInvalidate(String key) {
+        if (TwoLevelCacheManager.ALL_KEYS.equals(key)) {
+            pinnedItems.clear();
+        } else {
+            try {
+                pinnedItems.remove(Long.valueOf(key));
+            } catch (NumberFormatException e) {
+                log.warn("无法解析的商品缓存失效通知：{}", key);
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.yccc.bytemall.cache;
+
+import com.yccc.bytemall.mapper.ItemMapper;
+import com.yccc.bytemall.util.BloomFilterUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RBucket;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * 商品id白名单布隆过滤器，用于拦截不存在的商品id，防止缓存穿透
+ * 启动时按id游标分批扫描商品表构建；构建完成前视为未就绪，所有id放行，由缓存和数据库兜底
+ * 查询走本地位数组副本，不访问Redis；副本定时从Redis全量同步，新增的id通过发布订阅增量同步到各节点
+ * 容量不足需要重建时，在新的key下构建完整的过滤器，再修改指针一次性切换，其他节点在下次同步时切换，
+ * 不会读到构建了一半的位图；构建期间其他节点新增的id通过发布订阅补写到新过滤器，旧过滤器在切换后延迟删除
+ */
+@Component
+@DependsOnDatabaseInitialization
+@Slf4j
+public class ItemBloomFilter {
+
+    static final String FILTER_NAME = "itemIdWhiteList";
+
+    // 当前生效的过滤器名称，不存在时为FILTER_NAME
+    static final String CURRENT_KEY = FILTER_NAME + ":current";
+
+    // 新增商品id的广播频道，消息为逗号分隔的id
+    static final String ADD_TOPIC = "bloom:" + FILTER_NAME + ":add";
+
+    // 预期插入数量的下限
+    @Value("${byte.bloom-filter.min-expected-insertions:80000}")
+    private long minExpectedInsertions;
+
+    // 误判率
+    @Value("${byte.bloom-filter.false-probability:0.05}")
+    private double falseProbability;
+
+    // 每批从数据库读取的id数量
+    @Value("${byte.bloom-filter.batch-size:5000}")
+    private int batchSize;
+
+    // 本地位图副本的同步间隔（毫秒），重建后旧过滤器保留两个间隔
+    @Value("${byte.bloom-filter.snapshot-interval-ms:60000}")
+    private long snapshotIntervalMillis;
+
+    @Resource
+    private BloomFilterUtil bloomFilterUtil;
+
+    @Resource
+    private ItemMapper itemMapper;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    private volatile RBloomFilter<Long> bloomFilter;
+
+    private volatile boolean ready = false;
+
+    private RTopic addTopic;
+
+    private RBucket<String> currentName;
+
+    // 重建期间及切换后的一段时间内，其他节点广播的新增id暂存在这里，补写到新过滤器
+    private final Queue<Long> mirrorQueue = new ConcurrentLinkedQueue<>();
+
+    // 停止暂存广播id的时间戳（毫秒）
+    private volatile long mirrorUntil = 0L;
+
+    // 本地位数组副本，与Redis中的位图逐字节对应（每个字节的最高位为下标最小的位）
+    private volatile byte[] localBits = new byte[0];
+
+    // 位数组长度
+    private volatile long size;
+
+    // 哈希函数个数
+    private volatile int hashIterations;
+
+    // 正在拉取位图期间收到的新增id，替换副本后重新置位；不在拉取时为null，由this保护
+    private List<Long> pendingIds;
+
+    // 串行化位图同步，避免初始化与定时同步同时进行
+    private final Object snapshotLock = new Object();
+
+    @PostConstruct
+    public void init() {
+        addTopic = redissonClient.getTopic(ADD_TOPIC, StringCodec.INSTANCE);
+        currentName = redissonClient.getBucket(CURRENT_KEY, StringCodec.INSTANCE);
+        addTopic.addListener(String.class, (channel, message) -> {
+            boolean mirror = System.currentTimeMillis() < mirrorUntil;
+            for (String id : message.split(",")) {
+                setLocal(Long.valueOf(id));
+                if (mirror) {
+                    mirrorQueue.add(Long.valueOf(id));
+                }
+            }
+        });
+        // 异步初始化布隆过滤器
+        CompletableFuture.runAsync(this::initialize);
+    }
+
+    /**
+     * 按实际商品数量确定容量，并以id游标分批扫描全表写入布隆过滤器
+     * 当前过滤器容量足够时直接补写；容量不足或尚未创建时在新的key下构建，完成后切换
+     */
+    public void initialize() {
+        ready = false;
+        try {
+            long count = itemMapper.selectCount(null);
+            // 为后续新增的商品预留一半的余量
+            long expectedInsertions = Math.max(minExpectedInsertions, count + count / 2);
+            RBloomFilter<Long> current = currentFilter();
+            long currentCapacity = capacity(current);
+            if (currentCapacity > 0 && currentCapacity >= count) {
+                bloomFilter = current;
+                long total = addAllIds(current);
+                syncSnapshot();
+                ready = true;
+                log.info("布隆过滤器初始化完成，共写入{}个商品id", total);
+                return;
+            }
+            // 已存在的过滤器容量不足时误判率会明显升高，按新容量重建
+            log.info("布隆过滤器容量不足，重建：{} -> {}", currentCapacity, expectedInsertions);
+            String name = FILTER_NAME + ":" + System.currentTimeMillis();
+            // 使用LongCodec，本地计算哈希时只需编码id的字符串形式
+            RBloomFilter<Long> filter = bloomFilterUtil.create(name, LongCodec.INSTANCE, expectedInsertions, falseProbability);
+            // 构建期间写入旧过滤器的id由各节点广播，补写到新过滤器；其他节点最晚在下次同步时切换
+            mirrorUntil = Long.MAX_VALUE;
+            long total = addAllIds(filter);
+            drainMirrorQueue(filter);
+            currentName.set(name);
+            bloomFilter = filter;
+            mirrorUntil = System.currentTimeMillis() + snapshotIntervalMillis * 2;
+            drainMirrorQueue(filter);
+            if (currentCapacity > 0) {
+                current.expire(Duration.ofMillis(snapshotIntervalMillis * 2));
+            }
+            syncSnapshot();
+            ready = true;
+            log.info("布隆过滤器重建完成：{}，共写入{}个商品id", name, total);
+        } catch (Exception e) {
+            mirrorUntil = 0L;
+            log.error("布隆过滤器初始化失败，暂不启用布隆过滤器校验", e);
+        }
+    }
+
+    private long addAllIds(RBloomFilter<Long> filter) {
+        long lastId = 0L;
+        long total = 0L;
+        List<Long> ids;
+        do {
+            ids = itemMapper.selectIdsAfter(lastId, batchSize);
+            if (!ids.isEmpty()) {
+                bloomFilterUtil.addAll(filter, ids);
+                lastId = ids.get(ids.size() - 1);
+                total += ids.size();
+            }
+        } while (ids.size() == batchSize);
+        return total;
+    }
+
+    private void drainMirrorQueue(RBloomFilter<Long> filter) {
+        List<Long> ids = new ArrayList<>();
+        Long id;
+        while ((id = mirrorQueue.poll()) != null) {
+            ids.add(id);
+        }
+        bloomFilterUtil.addAll(filter, ids);
+    }
+
+    /**
+     * 指针指向的过滤器，旧版本没有指针时使用FILTER_NAME
+     */
+    private RBloomFilter<Long> currentFilter() {
+        String name = currentName.get();
+        return redissonClient.getBloomFilter(name == null ? FILTER_NAME : name, LongCodec.INSTANCE);
+    }
+
+    /**
+     * 过滤器的预期插入数量，未初始化时为0
+     */
+    private static long capacity(RBloomFilter<Long> filter) {
+        try {
+            return filter.getExpectedInsertions();
+        } catch (IllegalStateException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 定时从Redis拉取完整位图，修正发布订阅丢失消息导致的本地副本缺位
+     */
+    @Scheduled(fixedDelayString = "${byte.bloom-filter.snapshot-interval-ms:60000}")
+    public void refreshSnapshot() {
+        if (!ready) {
+            return;
+        }
+        try {
+            if (!mirrorQueue.isEmpty()) {
+                drainMirrorQueue(bloomFilter);
+            }
+            syncSnapshot();
+        } catch (Exception e) {
+            log.error("同步布隆过滤器位图失败", e);
+        }
+    }
+
+    /**
+     * 拉取完整位图替换本地副本
+     * 拉取期间通过广播收到的id可能不在拉取到的位图中，先记录下来，替换后重新置位，避免新增商品被误判为不存在
+     */
+    private void syncSnapshot() {
+        synchronized (snapshotLock) {
+            synchronized (this) {
+                pendingIds = new ArrayList<>();
+            }
+            try {
+                RBloomFilter<Long> filter = currentFilter();
+                // 其他节点可能已切换到重建后的过滤器，配置随位图一起刷新
+                if (!filter.getName().equals(bloomFilter.getName())) {
+                    log.info("布隆过滤器已切换：{} -> {}", bloomFilter.getName(), filter.getName());
+                    bloomFilter = filter;
+                }
+                long newSize = filter.getSize();
+                int newHashIterations = filter.getHashIterations();
+                byte[] bits = redissonClient.getBitSet(filter.getName()).toByteArray();
+                synchronized (this) {
+                    size = newSize;
+                    hashIterations = newHashIterations;
+                    // 过滤器中还没有任何id时Redis中不存在位图
+                    localBits = bits == null ? new byte[0] : bits;
+                    for (Long id : pendingIds) {
+                        setBits(id);
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    pendingIds = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 布隆过滤器是否已构建完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 判断商品id是否可能存在，未就绪时一律返回true
+     */
+    public boolean mightContain(Long id) {
+        if (!ready) {
+            return true;
+        }
+        byte[] bits = localBits;
+        for (long index : bloomFilterUtil.hashIndexes(LongCodec.INSTANCE, id, hashIterations, size)) {
+            int byteIndex = (int) (index >>> 3);
+            // Redis会截掉位图末尾全为0的字节
+            if (byteIndex >= bits.length || (bits[byteIndex] & (0x80 >>> (index & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新增商品后写入布隆过滤器
+     */
+    public void add(Long id) {
+        // 过滤器尚未创建时无需处理，后续的全表扫描会覆盖该id
+        if (bloomFilter != null) {
+            // 写入指针指向的过滤器，其他节点重建切换后本节点的引用可能尚未更新
+            currentFilter().add(id);
+            // 本节点立即置位，不依赖自己广播的回显，消息丢失时新建的商品也不会被判为不存在
+            setLocal(id);
+            addTopic.publish(String.valueOf(id));
+        }
+    }
+
+    /**
+     * 批量写入布隆过滤器
+     */
+    public void addAll(Collection<Long> ids) {
+        if (bloomFilter != null && !ids.isEmpty()) {
+            bloomFilterUtil.addAll(currentFilter(), ids);
+            ids.forEach(this::setLocal);
+            addTopic.publish(ids.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+    }
+
+    /**
+     * 在本地位数组副本中置位，位数组长度不足时扩容
+     */
+    private synchronized void setLocal(Long id) {
+        if (pendingIds != null) {
+            pendingIds.add(id);
+        }
+        setBits(id);
+    }
+
+    private void setBits(Long id) {
+        if (size == 0) {
+            return;
+        }
+        byte[] bits = localBits;
+        for (long index : bloomFilterUtil.hashIndexes(LongCodec.INSTANCE, id, hashIterations, size)) {
+            int byteIndex = (int) (index >>> 3);
+            if (byteIndex >= bits.length) {
+                bits = Arrays.copyOf(bits, (int) ((size + 7) >>> 3));
+            }
+            bits[byteIndex] |= (byte) (0x80 >>> (index & 7));
+        }
+        localBits = bits;
+    }
+}
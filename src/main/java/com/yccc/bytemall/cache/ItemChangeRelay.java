@@ -0,0 +1,102 @@
+package com.yccc.bytemall.cache;
+
+import com.yccc.bytemall.entity.po.ItemChangeEvent;
+import com.yccc.bytemall.mapper.ItemChangeEventMapper;
+import com.yccc.bytemall.service.IItemService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * 商品变更发件箱的中继
+ * 商品的写操作只在事务中写入变更事件，由中继按id顺序分批读取，同一批内同一商品的多次变更合并为一次，
+ * 按数据库中的最新数据回填Redis、广播清理各节点的本地缓存、写入布隆过滤器并刷新内存索引，成功后删除事件。
+ * 事务提交后立即触发一次，另有定时任务兜底处理触发丢失、同步失败或节点宕机遗留的事件；
+ * 同步以数据库最新数据为准且可重复执行，事件被多次处理不影响正确性，集群内用分布式锁避免重复劳动
+ */
+@Component
+@Slf4j
+public class ItemChangeRelay {
+
+    private static final String LOCK_KEY = "lock:outbox:item-change";
+
+    // 每批处理的事件数量
+    @Value("${byte.outbox.batch-size:500}")
+    private int batchSize;
+
+    // 每次处理的最大批数，积压的事件留给下一次，避免长时间占用线程和分布式锁
+    @Value("${byte.outbox.max-batches-per-drain:20}")
+    private int maxBatchesPerDrain;
+
+    @Resource
+    private ItemChangeEventMapper itemChangeEventMapper;
+
+    @Resource
+    private IItemService itemService;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private ThreadPoolTaskExecutor outboxRelayExecutor;
+
+    /**
+     * 写入变更事件的事务提交后立即触发同步
+     */
+    @TransactionalEventListener
+    public void onItemChanged(ItemChangedEvent event) {
+        try {
+            outboxRelayExecutor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // 已有同步任务在排队，由其一并处理
+        }
+    }
+
+    /**
+     * 处理发件箱中的事件，最多处理maxBatchesPerDrain批
+     */
+    @Scheduled(fixedDelayString = "${byte.outbox.poll-interval-ms:1000}")
+    public void drain() {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        // 其他节点正在处理时跳过，未处理完的事件由下一次定时任务处理
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            List<ItemChangeEvent> events;
+            int batches = 0;
+            do {
+                events = itemChangeEventMapper.selectOldest(batchSize);
+                if (events.isEmpty()) {
+                    break;
+                }
+                Set<Long> itemIds = events.stream()
+                        .map(ItemChangeEvent::getItemId)
+                        .collect(Collectors.toCollection(LinkedHashSet::new));
+                itemService.syncItemCaches(itemIds);
+                itemChangeEventMapper.deleteBatchIds(events.stream()
+                        .map(ItemChangeEvent::getId)
+                        .collect(Collectors.toList()));
+                log.debug("商品变更同步完成，事件{}个，商品{}个", events.size(), itemIds.size());
+            } while (events.size() == batchSize && ++batches < maxBatchesPerDrain);
+        } catch (Exception e) {
+            log.error("商品变更同步失败，事件保留到下次处理", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.yccc.bytemall.cache;
+
+import java.util.Collection;
+
+/**
+ * 商品变更已写入发件箱，事务提交后触发中继立即同步
+ */
+public class ItemChangedEvent {
+
+    private final Collection<Long> itemIds;
+
+    public ItemChangedEvent(Collection<Long> itemIds) {
+        this.itemIds = itemIds;
+    }
+
+    public Collection<Long> getItemIds() {
+        return itemIds;
+    }
+}
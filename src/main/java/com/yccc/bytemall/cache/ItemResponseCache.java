@@ -0,0 +1,163 @@
+package com.yccc.bytemall.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yccc.bytemall.common.api.ApiResult;
+import com.yccc.bytemall.entity.dto.ItemDTO;
+import com.yccc.bytemall.stock.StockCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品详情接口的响应缓存，保存序列化好的ApiResult JSON，命中时直接写出字节，不再构造ItemDTO和ApiResult
+ * 库存随扣减实时变化，JSON在库存值处切分为前后两段保存，写出时从本节点的库存视图取值拼接在中间
+ * 只保存在本节点内存中，存活时间与L1一致，商品缓存失效时通过同一个失效通知清理
+ */
+@Component
+@Slf4j
+public class ItemResponseCache {
+
+    // 渲染时代替库存值的占位，用于定位切分位置
+    private static final int STOCK_PLACEHOLDER = Integer.MIN_VALUE;
+
+    private static final byte[] PLACEHOLDER_BYTES = ("\"stock\":" + STOCK_PLACEHOLDER).getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] NULL_BYTES = "null".getBytes(StandardCharsets.UTF_8);
+
+    // 是否启用商品详情的响应缓存
+    @Value("${byte.response-cache.enabled:false}")
+    private boolean enabled;
+
+    // 最多缓存的商品数量
+    @Value("${byte.response-cache.maximum-size:10000}")
+    private int maximumSize;
+
+    // 存活时间（秒），与L1一致
+    @Value("${byte.cache.local.expire-seconds:60}")
+    private long expireSeconds;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private StockCounter stockCounter;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    private LocalCache<Long, RenderedItem> localCache;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        localCache = new LocalCache<>(maximumSize, expireSeconds, TimeUnit.SECONDS);
+        TwoLevelCacheManager.addInvalidateListener(redissonClient, "item", this::onInvalidate);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean contains(Long id) {
+        return localCache.get(id) != null;
+    }
+
+    /**
+     * 命中时直接写出响应
+     *
+     * @return 未命中时返回false，由调用方正常查询
+     */
+    public boolean write(Long id, HttpServletResponse response) throws IOException {
+        RenderedItem rendered = localCache.get(id);
+        if (rendered == null) {
+            return false;
+        }
+        Integer stock = stockCounter.peek(id);
+        if (stock == null) {
+            stock = rendered.stock;
+        }
+        byte[] stockBytes = stock == null ? NULL_BYTES : String.valueOf(stock).getBytes(StandardCharsets.US_ASCII);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(rendered.head.length + stockBytes.length + rendered.tail.length);
+        ServletOutputStream out = response.getOutputStream();
+        out.write(rendered.head);
+        out.write(stockBytes);
+        out.write(rendered.tail);
+        return true;
+    }
+
+    /**
+     * 按接口的序列化方式渲染响应并缓存
+     */
+    public void put(Long id, ItemDTO itemDTO) {
+        ItemDTO copy = new ItemDTO();
+        BeanUtils.copyProperties(itemDTO, copy);
+        copy.setStock(STOCK_PLACEHOLDER);
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(ApiResult.success(copy));
+            int index = indexOf(json, PLACEHOLDER_BYTES);
+            if (index < 0) {
+                return;
+            }
+            int split = index + PLACEHOLDER_BYTES.length - String.valueOf(STOCK_PLACEHOLDER).length();
+            localCache.put(id, new RenderedItem(Arrays.copyOfRange(json, 0, split),
+                    Arrays.copyOfRange(json, index + PLACEHOLDER_BYTES.length, json.length), itemDTO.getStock()));
+        } catch (JsonProcessingException e) {
+            log.warn("商品详情响应渲染失败，id：{}", id, e);
+        }
+    }
+
+    private void onInvalidate(String key) {
+        if (TwoLevelCacheManager.ALL_KEYS.equals(key)) {
+            localCache.invalidateAll();
+        } else {
+            try {
+                localCache.invalidate(Long.valueOf(key));
+            } catch (NumberFormatException e) {
+                log.warn("无法解析的商品缓存失效通知：{}", key);
+            }
+        }
+    }
+
+    private static int indexOf(byte[] source, byte[] target) {
+        outer:
+        for (int i = 0; i <= source.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (source[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static final class RenderedItem {
+        // 库存值之前、之后的JSON
+        private final byte[] head;
+        private final byte[] tail;
+        // 渲染时的库存，库存计数未加载时使用
+        private final Integer stock;
+
+        private RenderedItem(byte[] head, byte[] tail, Integer stock) {
+            this.head = head;
+            this.tail = tail;
+            this.stock = stock;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.yccc.bytemall.cache;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yccc.bytemall.entity.po.Item;
+import com.yccc.bytemall.mapper.ItemMapper;
+import com.yccc.bytemall.stock.StockCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品版本号，用于商品接口的条件请求（ETag），判断是否修改时不需要加载和序列化商品
+ * 版本号为商品最后一次由发件箱中继同步的时间戳（毫秒），从未同步过的商品取数据库中的update_time；
+ * 按商品id分散保存在Redis的多个哈希中，避免单个大key、热key，本节点再缓存一份，商品缓存失效时通过同一个失效通知清理；
+ * 查询前先经过布隆过滤器和空值缓存，数据库中也不存在的id记入空值缓存
+ * 库存取本节点的库存视图，不体现在版本号中，ETag由版本号和当前库存共同组成
+ */
+@Component
+@Slf4j
+public class ItemVersionCache {
+
+    static final String VERSION_KEY_PREFIX = "item:version:";
+
+    // 版本号哈希的分片数，按商品id取模
+    @Value("${byte.version-cache.shards:64}")
+    private int shards;
+
+    // 本地最多缓存的版本号数量
+    @Value("${byte.version-cache.local-maximum-size:100000}")
+    private int localMaximumSize;
+
+    // 本地版本号的存活时间（秒），与L1一致
+    @Value("${byte.cache.local.expire-seconds:60}")
+    private long localExpireSeconds;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private ItemMapper itemMapper;
+
+    @Resource
+    private StockCounter stockCounter;
+
+    @Resource
+    private ItemBloomFilter itemBloomFilter;
+
+    @Resource
+    private NegativeItemCache negativeItemCache;
+
+    private LocalCache<Long, Long> localCache;
+
+    @PostConstruct
+    public void init() {
+        localCache = new LocalCache<>(localMaximumSize, localExpireSeconds, TimeUnit.SECONDS);
+        TwoLevelCacheManager.addInvalidateListener(redissonClient, "item", this::onInvalidate);
+    }
+
+    /**
+     * 商品的版本号，商品不存在时返回null
+     */
+    public Long getVersion(Long id) {
+        return getVersions(Collections.singletonList(id)).get(id);
+    }
+
+    /**
+     * 批量查询版本号，依次查询布隆过滤器和空值缓存、本地、Redis、数据库，不存在的商品不返回
+     */
+    public Map<Long, Long> getVersions(List<Long> ids) {
+        Map<Long, Long> versions = new HashMap<>();
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : ids) {
+            if (!itemBloomFilter.mightContain(id) || negativeItemCache.containsLocal(id)) {
+                continue;
+            }
+            Long version = localCache.get(id);
+            if (version != null) {
+                versions.put(id, version);
+            } else {
+                missingIds.add(id);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return versions;
+        }
+        Map<Integer, List<Long>> shardIds = new LinkedHashMap<>();
+        missingIds.forEach(id -> shardIds.computeIfAbsent(shard(id), key -> new ArrayList<>()).add(id));
+        // 每个分片一次HMGET，在同一个管道中发送
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            shardIds.forEach((shard, shardMembers) -> connection.hMGet(bytes(key(shard)),
+                    shardMembers.stream().map(id -> bytes(String.valueOf(id))).toArray(byte[][]::new)));
+            return null;
+        });
+        List<Long> unknownIds = new ArrayList<>();
+        int index = 0;
+        for (List<Long> shardMembers : shardIds.values()) {
+            List<?> values = (List<?>) results.get(index++);
+            for (int i = 0; i < shardMembers.size(); i++) {
+                Object value = values == null ? null : values.get(i);
+                if (value != null) {
+                    Long version = Long.valueOf(value.toString());
+                    versions.put(shardMembers.get(i), version);
+                    localCache.put(shardMembers.get(i), version);
+                } else {
+                    unknownIds.add(shardMembers.get(i));
+                }
+            }
+        }
+        unknownIds.removeAll(negativeItemCache.containsRemote(unknownIds));
+        if (!unknownIds.isEmpty()) {
+            versions.putAll(loadVersions(unknownIds));
+        }
+        return versions;
+    }
+
+    /**
+     * 商品变更同步后更新版本号，已删除的商品移除版本号
+     */
+    public void update(Collection<Long> existingIds, Collection<Long> deletedIds) {
+        String version = String.valueOf(System.currentTimeMillis());
+        Map<Integer, Map<String, String>> fields = new HashMap<>();
+        existingIds.forEach(id -> fields.computeIfAbsent(shard(id), key -> new HashMap<>())
+                .put(String.valueOf(id), version));
+        fields.forEach((shard, shardFields) -> stringRedisTemplate.opsForHash().putAll(key(shard), shardFields));
+        Map<Integer, List<Object>> deletedFields = new HashMap<>();
+        deletedIds.forEach(id -> deletedFields.computeIfAbsent(shard(id), key -> new ArrayList<>())
+                .add(String.valueOf(id)));
+        deletedFields.forEach((shard, shardFields) ->
+                stringRedisTemplate.opsForHash().delete(key(shard), shardFields.toArray()));
+        existingIds.forEach(localCache::invalidate);
+        deletedIds.forEach(localCache::invalidate);
+    }
+
+    /**
+     * 单个商品的ETag：版本号和当前库存
+     */
+    public String etag(Long id, Long version) {
+        Integer stock = stockCounter.peek(id);
+        return "W/\"" + version + "-" + (stock == null ? "n" : stock) + "\"";
+    }
+
+    /**
+     * 多个商品的ETag：按顺序对每个商品的id、版本号和当前库存做哈希，不存在的商品也参与计算
+     */
+    public String etag(List<Long> ids, Map<Long, Long> versions) {
+        Map<Long, Integer> stocks = stockCounter.peekAll(ids);
+        // FNV-1a 64位哈希
+        long hash = 0xcbf29ce484222325L;
+        for (Long id : ids) {
+            for (long value : new long[]{id, versions.getOrDefault(id, -1L), stocks.getOrDefault(id, -1)}) {
+                for (int shift = 0; shift < 64; shift += 8) {
+                    hash ^= (value >>> shift) & 0xFF;
+                    hash *= 0x100000001b3L;
+                }
+            }
+        }
+        return "W/\"" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * 从数据库读取update_time作为版本号，只在Redis中没有时写入，不覆盖并发同步写入的新版本号
+     * 数据库中不存在的id记入空值缓存
+     */
+    private Map<Long, Long> loadVersions(List<Long> ids) {
+        List<Item> items = itemMapper.selectList(new QueryWrapper<Item>()
+                .select("id", "update_time")
+                .in("id", ids));
+        Map<Long, Long> versions = new HashMap<>();
+        for (Item item : items) {
+            long version = item.getUpdateTime() == null ? 0L
+                    : item.getUpdateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            versions.put(item.getId(), version);
+        }
+        if (!versions.isEmpty()) {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                versions.forEach((id, version) -> connection.hSetNX(bytes(key(shard(id))),
+                        bytes(String.valueOf(id)), bytes(String.valueOf(version))));
+                return null;
+            });
+        }
+        List<Long> absentIds = new ArrayList<>(ids);
+        absentIds.removeAll(versions.keySet());
+        negativeItemCache.addAll(absentIds);
+        return versions;
+    }
+
+    private void onInvalidate(String key) {
+        if (TwoLevelCacheManager.ALL_KEYS.equals(key)) {
+            localCache.invalidateAll();
+        } else {
+            try {
+                localCache.invalidate(Long.valueOf(key));
+            } catch (NumberFormatException e) {
+                log.warn("无法解析的商品缓存失效通知：{}", key);
+            }
+        }
+    }
+
+    private int shard(Long id) {
+        return (int) Math.floorMod(id, (long) shards);
+    }
+
+    private static String key(int shard) {
+        return VERSION_KEY_PREFIX + shard;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,202 @@
+package com.yccc.bytemall.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不存在的商品id的空值缓存，与商品缓存使用不同的key，不占用item::的key空间
+ * 本地为有容量上限的LRU集合；Redis中按时间分段，每段一个集合，id写入当前段，
+ * 查询当前段和上一段，集合在下一段结束时整体过期，每个id保留一到两个时间段
+ * 商品被创建或恢复时由发件箱中继移除，其他节点的本地条目通过缓存失效通知清理；
+ * 移除的id同时记入按同样方式分段的已存在集合，加载节点在此之后写入的空值会被跳过，不会把刚创建的商品挡住。
+ * 所有集合使用同一个hash tag，脚本访问的多个key在集群中落在同一个槽位
+ */
+@Component
+@Slf4j
+public class NegativeItemCache {
+
+    static final String KEY_PREFIX = "item:{absent}:";
+
+    static final String PRESENT_KEY_PREFIX = "item:{absent}:present:";
+
+    private static final DefaultRedisScript<List<Long>> CHECK_SCRIPT = script("lua/absent_check.lua", List.class);
+
+    private static final DefaultRedisScript<List<Long>> ADD_SCRIPT = script("lua/absent_add.lua", List.class);
+
+    private static final DefaultRedisScript<Long> REMOVE_SCRIPT = script("lua/absent_remove.lua", Long.class);
+
+    // 本地最多保存的不存在id数量
+    @Value("${byte.negative-cache.local-maximum-size:100000}")
+    private int localMaximumSize;
+
+    // 本地条目的存活时间（秒）
+    @Value("${byte.negative-cache.local-expire-seconds:30}")
+    private long localExpireSeconds;
+
+    // Redis中每个时间段的长度（秒）
+    @Value("${byte.negative-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private LocalCache<Long, Boolean> localCache;
+
+    private Counter localHits;
+
+    private Counter redisHits;
+
+    @PostConstruct
+    public void init() {
+        localCache = new LocalCache<>(localMaximumSize, localExpireSeconds, TimeUnit.SECONDS);
+        // 商品缓存失效时同时清理本地条目，新建的商品不会被本地空值挡住
+        TwoLevelCacheManager.addInvalidateListener(redissonClient, "item", this::onInvalidate);
+        localHits = Counter.builder("item.negative.hits").tag("tier", "local")
+                .description("空值缓存拦截的查询次数").register(meterRegistry);
+        redisHits = Counter.builder("item.negative.hits").tag("tier", "redis")
+                .description("空值缓存拦截的查询次数").register(meterRegistry);
+    }
+
+    /**
+     * 只查询本地，命中时表示商品不存在
+     */
+    public boolean containsLocal(Long id) {
+        if (localCache.get(id) != null) {
+            localHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 一次查询Redis判断多个id，命中的回填本地
+     *
+     * @return 不存在的商品id
+     */
+    public Set<Long> containsRemote(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        long bucket = currentBucket();
+        List<Long> result = stringRedisTemplate.execute(CHECK_SCRIPT, Arrays.asList(key(bucket), key(bucket - 1)),
+                ids.stream().map(String::valueOf).toArray());
+        if (result == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> absentIds = new HashSet<>();
+        Iterator<Long> iterator = ids.iterator();
+        for (Long absent : result) {
+            Long id = iterator.next();
+            if (absent == 1) {
+                absentIds.add(id);
+                localCache.put(id, Boolean.TRUE);
+            }
+        }
+        redisHits.increment(absentIds.size());
+        return absentIds;
+    }
+
+    /**
+     * 记录数据库中不存在的商品id，最近被确认存在的id不记录
+     */
+    public void addAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        long bucket = currentBucket();
+        List<String> args = new ArrayList<>(ids.size() + 1);
+        // 集合在下一个时间段结束时过期
+        args.add(String.valueOf(expireAt(bucket)));
+        ids.forEach(id -> args.add(String.valueOf(id)));
+        List<Long> added = stringRedisTemplate.execute(ADD_SCRIPT,
+                Arrays.asList(key(bucket), presentKey(bucket), presentKey(bucket - 1)), args.toArray());
+        if (added == null) {
+            return;
+        }
+        Iterator<Long> iterator = ids.iterator();
+        for (Long flag : added) {
+            Long id = iterator.next();
+            if (flag == 1) {
+                localCache.put(id, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * 商品已存在，从Redis和本地移除并记入已存在集合，其他节点的本地条目由调用方通过缓存失效通知清理
+     */
+    public void removeAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        for (Long id : ids) {
+            localCache.invalidate(id);
+        }
+        long bucket = currentBucket();
+        List<String> args = new ArrayList<>(ids.size() + 1);
+        args.add(String.valueOf(expireAt(bucket)));
+        ids.forEach(id -> args.add(String.valueOf(id)));
+        stringRedisTemplate.execute(REMOVE_SCRIPT,
+                Arrays.asList(key(bucket), key(bucket - 1), presentKey(bucket)), args.toArray());
+    }
+
+    private void onInvalidate(String key) {
+        if (TwoLevelCacheManager.ALL_KEYS.equals(key)) {
+            localCache.invalidateAll();
+        } else {
+            try {
+                localCache.invalidate(Long.valueOf(key));
+            } catch (NumberFormatException e) {
+                log.warn("无法解析的商品缓存失效通知：{}", key);
+            }
+        }
+    }
+
+    private long currentBucket() {
+        return System.currentTimeMillis() / (ttlSeconds * 1000);
+    }
+
+    /**
+     * 时间段对应的集合在下一个时间段结束时过期
+     */
+    private long expireAt(long bucket) {
+        return (bucket + 2) * ttlSeconds * 1000;
+    }
+
+    private static String key(long bucket) {
+        return KEY_PREFIX + bucket;
+    }
+
+    private static String presentKey(long bucket) {
+        return PRESENT_KEY_PREFIX + bucket;
+    }
+
+    /**
+     * 脚本返回列表时以List.class声明结果类型，元素类型由脚本保证
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> DefaultRedisScript<T> script(String path, Class<? super T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        script.setResultType((Class<T>) resultType);
+        return script;
+    }
+}
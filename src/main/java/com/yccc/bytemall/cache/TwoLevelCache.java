@@ -0,0 +1,221 @@
+package com.yccc.bytemall.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RTopic;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 二级缓存：L1为进程内本地缓存，L2为Redis缓存
+ * 读取时先查L1，未命中再查L2并回填L1；失效时同时清理L1、L2，并通过Redis发布订阅通知其他节点清理各自的L1
+ * 每一级的命中、未命中分别计数，指标名cache.level.gets，标签cache、level、result
+ * L2开启了事务同步时put、evict在事务提交后才执行，L1的写入和跨节点失效通知同样推迟到提交后，
+ * 事务回滚时本节点的L1不会留下未提交的值
+ */
+public class TwoLevelCache implements Cache {
+
+    private final String name;
+
+    private final LocalCache<String, ValueWrapper> localCache;
+
+    private final Cache redisCache;
+
+    private final RTopic invalidateTopic;
+
+    private final Counter localHits;
+
+    private final Counter localMisses;
+
+    private final Counter redisHits;
+
+    private final Counter redisMisses;
+
+    public TwoLevelCache(String name, LocalCache<String, ValueWrapper> localCache, Cache redisCache, RTopic invalidateTopic,
+                         MeterRegistry meterRegistry) {
+        this.name = name;
+        this.localCache = localCache;
+        this.redisCache = redisCache;
+        this.invalidateTopic = invalidateTopic;
+        this.localHits = counter(meterRegistry, "l1", "hit");
+        this.localMisses = counter(meterRegistry, "l1", "miss");
+        this.redisHits = counter(meterRegistry, "l2", "hit");
+        this.redisMisses = counter(meterRegistry, "l2", "miss");
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        ValueWrapper wrapper = localCache.get(localKey);
+        if (wrapper != null) {
+            localHits.increment();
+            return wrapper;
+        }
+        localMisses.increment();
+        // L1未命中，查询Redis并回填本地缓存
+        wrapper = redisCache.get(key);
+        if (wrapper != null) {
+            redisHits.increment();
+            localCache.put(localKey, wrapper);
+        } else {
+            redisMisses.increment();
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("缓存值类型不匹配，期望类型[" + type.getName() + "]，实际值：" + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        T value = redisCache.get(key, valueLoader);
+        localCache.put(localKey(key), new SimpleValueWrapper(value));
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        String localKey = localKey(key);
+        // 先清理旧值，提交后再写入新值
+        localCache.invalidate(localKey);
+        afterCommit(() -> localCache.put(localKey, new SimpleValueWrapper(value)));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = redisCache.putIfAbsent(key, value);
+        // 以Redis中的实际值为准，本地缓存直接失效，下次读取时回填
+        localCache.invalidate(localKey(key));
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        String localKey = localKey(key);
+        redisCache.evict(key);
+        localCache.invalidate(localKey);
+        // Redis中的值在提交后才删除，提交前通知其他节点可能让它们从Redis回填旧值
+        afterCommit(() -> {
+            localCache.invalidate(localKey);
+            invalidateTopic.publish(name + TwoLevelCacheManager.KEY_SEPARATOR + localKey);
+        });
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCache.invalidateAll();
+        afterCommit(() -> {
+            localCache.invalidateAll();
+            invalidateTopic.publish(name + TwoLevelCacheManager.KEY_SEPARATOR + TwoLevelCacheManager.ALL_KEYS);
+        });
+    }
+
+    /**
+     * 仅查询本节点的L1缓存，未命中时由调用方自行查询Redis（如合并为批量查询）
+     */
+    public ValueWrapper getLocal(Object key) {
+        ValueWrapper wrapper = localCache.get(localKey(key));
+        if (wrapper != null) {
+            localHits.increment();
+        } else {
+            localMisses.increment();
+        }
+        return wrapper;
+    }
+
+    /**
+     * 调用方绕过get直接批量查询Redis时，记录L2的命中、未命中次数
+     */
+    public void recordRemote(int hits, int misses) {
+        redisHits.increment(hits);
+        redisMisses.increment(misses);
+    }
+
+    /**
+     * 仅写入本节点的L1缓存，用于预热及合并查询时回填已写入Redis的值
+     */
+    public void putLocal(Object key, Object value) {
+        localCache.put(localKey(key), new SimpleValueWrapper(value));
+    }
+
+    /**
+     * 清理所有节点的L1缓存，不删除Redis中的值，用于Redis已回填最新值之后
+     */
+    public void evictAllLocal(Object key) {
+        String localKey = localKey(key);
+        localCache.invalidate(localKey);
+        invalidateTopic.publish(name + TwoLevelCacheManager.KEY_SEPARATOR + localKey);
+    }
+
+    /**
+     * 仅清理本节点的L1缓存，用于响应其他节点发来的失效通知
+     */
+    public void evictLocal(String localKey) {
+        if (TwoLevelCacheManager.ALL_KEYS.equals(localKey)) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(localKey);
+        }
+    }
+
+    /**
+     * 当前线程有事务同步时在提交后执行，否则立即执行
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String level, String result) {
+        return Counter.builder("cache.level.gets")
+                .description("二级缓存每一级的命中、未命中次数")
+                .tag("cache", name)
+                .tag("level", level)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 本地缓存的key与RedisCache的key转换规则保持一致，保证跨节点失效通知可以对应上
+     */
+    private String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
@@ -0,0 +1,104 @@
+package com.yccc.bytemall.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 二级缓存管理器，在RedisCacheManager之前加一层本地缓存
+ * 订阅缓存失效频道，收到其他节点的失效通知后清理本地缓存
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager {
+
+    // 缓存失效通知频道，消息格式：cacheName::key
+    public static final String INVALIDATE_TOPIC = "cache:invalidate";
+
+    static final String KEY_SEPARATOR = "::";
+
+    // 清空整个缓存时使用的key
+    static final String ALL_KEYS = "*";
+
+    private final CacheManager redisCacheManager;
+
+    private final RTopic invalidateTopic;
+
+    private final int maximumSize;
+
+    private final long expireSeconds;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, TwoLevelCache> cacheMap = new ConcurrentHashMap<>();
+
+    /**
+     * @param redisCacheManager L2缓存管理器
+     * @param redissonClient    用于发布订阅失效通知
+     * @param maximumSize       每个缓存的本地条目上限
+     * @param expireSeconds     本地缓存存活时间（秒），应远小于Redis缓存的过期时间
+     * @param meterRegistry     记录各级缓存的命中率
+     */
+    public TwoLevelCacheManager(CacheManager redisCacheManager, RedissonClient redissonClient,
+                                int maximumSize, long expireSeconds, MeterRegistry meterRegistry) {
+        this.redisCacheManager = redisCacheManager;
+        this.meterRegistry = meterRegistry;
+        this.maximumSize = maximumSize;
+        this.expireSeconds = expireSeconds;
+        this.invalidateTopic = redissonClient.getTopic(INVALIDATE_TOPIC, StringCodec.INSTANCE);
+        this.invalidateTopic.addListener(String.class, (channel, message) -> onInvalidate(message));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return cacheMap.computeIfAbsent(name, cacheName -> {
+            Cache redisCache = redisCacheManager.getCache(cacheName);
+            if (redisCache == null) {
+                return null;
+            }
+            return new TwoLevelCache(cacheName,
+                    new LocalCache<>(maximumSize, expireSeconds, TimeUnit.SECONDS),
+                    redisCache, invalidateTopic, meterRegistry);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    /**
+     * 订阅某个缓存的跨节点失效通知，用于需要与L1一同清理的本地派生数据（如常驻热点、响应缓存）
+     *
+     * @param listener 参数为失效的key，清空整个缓存时为ALL_KEYS
+     */
+    public static void addInvalidateListener(RedissonClient redissonClient, String cacheName, Consumer<String> listener) {
+        String prefix = cacheName + KEY_SEPARATOR;
+        redissonClient.getTopic(INVALIDATE_TOPIC, StringCodec.INSTANCE).addListener(String.class, (channel, message) -> {
+            if (message.startsWith(prefix)) {
+                listener.accept(message.substring(prefix.length()));
+            }
+        });
+    }
+
+    private void onInvalidate(String message) {
+        int index = message.indexOf(KEY_SEPARATOR);
+        if (index < 0) {
+            log.warn("无法解析的缓存失效通知：{}", message);
+            return;
+        }
+        TwoLevelCache cache = cacheMap.get(message.substring(0, index));
+        if (cache != null) {
+            cache.evictLocal(message.substring(index + KEY_SEPARATOR.length()));
+        }
+    }
+}
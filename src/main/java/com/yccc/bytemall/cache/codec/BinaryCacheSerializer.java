@@ -0,0 +1,191 @@
+package com.yccc.bytemall.cache.codec;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 缓存值的二进制序列化器，替代带类名的Jackson JSON
+ * 数据格式：魔数(1字节) + 标志(1字节，最低位表示压缩) + 值；
+ * 值：类型编号(1字节，0表示null) + 版本号(1字节) + 长度(4字节) + 内容。
+ * 已注册ValueCodec的类型按其编码写入，其他类型以JSON类型编号包装旧的JSON序列化结果；
+ * 超过压缩阈值的数据整体用Deflate压缩。
+ * 兼容模式下没有魔数的数据按旧的JSON格式读取，关闭后这类数据视为未命中；
+ * 未知类型编号、长度前缀越界或内容损坏的数据记录日志后视为未命中，由调用方重新加载后覆盖；
+ * 回退到JSON写入时仍能读取已写入的二进制数据，便于灰度和回滚
+ */
+@Slf4j
+public class BinaryCacheSerializer implements RedisSerializer<Object> {
+
+    // 第一个字节，旧JSON数据以'['或'{'开头，不会冲突
+    static final int MAGIC = 0xB1;
+
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final int TYPE_NULL = 0;
+
+    // 未注册类型，内容为JSON序列化结果
+    private static final int TYPE_JSON = 0x7F;
+
+    private final Map<Class<?>, ValueCodec<?>> codecsByType = new HashMap<>();
+
+    private final Map<Integer, ValueCodec<?>> codecsById = new HashMap<>();
+
+    private final RedisSerializer<Object> jsonSerializer;
+
+    private final int compressThreshold;
+
+    private final boolean readLegacyJson;
+
+    private final boolean writeBinary;
+
+    /**
+     * @param jsonSerializer    未注册类型及旧数据使用的JSON序列化器
+     * @param compressThreshold 超过该字节数时压缩，小于等于0时不压缩
+     * @param readLegacyJson    是否读取没有魔数的旧JSON数据
+     * @param writeBinary       是否以二进制格式写入，为false时按旧的JSON格式写入
+     */
+    public BinaryCacheSerializer(RedisSerializer<Object> jsonSerializer, int compressThreshold,
+                                 boolean readLegacyJson, boolean writeBinary) {
+        this.jsonSerializer = jsonSerializer;
+        this.compressThreshold = compressThreshold;
+        this.readLegacyJson = readLegacyJson || !writeBinary;
+        this.writeBinary = writeBinary;
+    }
+
+    public BinaryCacheSerializer register(ValueCodec<?> codec) {
+        if (codec.typeId() <= TYPE_NULL || codec.typeId() >= TYPE_JSON || codecsById.containsKey(codec.typeId())) {
+            throw new IllegalArgumentException("类型编号不可用：" + codec.typeId());
+        }
+        codecsByType.put(codec.type(), codec);
+        codecsById.put(codec.typeId(), codec);
+        return this;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (!writeBinary) {
+            return jsonSerializer.serialize(value);
+        }
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+            writeValue(value, new DataOutputStream(body));
+            boolean compress = compressThreshold > 0 && body.size() > compressThreshold;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.size() + 2);
+            bytes.write(MAGIC);
+            bytes.write(compress ? FLAG_COMPRESSED : 0);
+            if (compress) {
+                // 缓存值读写频繁，用最快的压缩级别；Deflater持有本地内存，用完立即释放
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+                    body.writeTo(out);
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                body.writeTo(bytes);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("缓存值序列化失败", e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if ((bytes[0] & 0xFF) != MAGIC) {
+            return readLegacy(bytes);
+        }
+        Inflater inflater = (bytes[1] & FLAG_COMPRESSED) != 0 ? new Inflater() : null;
+        try {
+            InputStream body = new ByteArrayInputStream(bytes, 2, bytes.length - 2);
+            if (inflater != null) {
+                body = new InflaterInputStream(body, inflater);
+            }
+            return readValue(new DataInputStream(body));
+        } catch (IOException | RuntimeException e) {
+            log.warn("缓存值反序列化失败，按未命中处理，长度{}", bytes.length, e);
+            return null;
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * 写入一个带类型编号、版本号和长度前缀的值，供ValueCodec嵌套编码使用
+     */
+    @SuppressWarnings("unchecked")
+    public void writeValue(Object value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+            return;
+        }
+        ValueCodec<Object> codec = (ValueCodec<Object>) codecsByType.get(value.getClass());
+        byte[] content;
+        if (codec == null) {
+            content = jsonSerializer.serialize(value);
+        } else {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+            codec.write(value, new DataOutputStream(buffer), this);
+            content = buffer.toByteArray();
+        }
+        out.writeByte(codec == null ? TYPE_JSON : codec.typeId());
+        out.writeByte(codec == null ? 0 : codec.version());
+        out.writeInt(content.length);
+        out.write(content);
+    }
+
+    /**
+     * 读取writeValue写入的值，内容末尾多出的字段（新版本写入）被忽略
+     */
+    public Object readValue(DataInputStream in) throws IOException {
+        int typeId = in.readUnsignedByte();
+        if (typeId == TYPE_NULL) {
+            return null;
+        }
+        int version = in.readUnsignedByte();
+        int length = CodecIO.readLength(in);
+        if (length < 0) {
+            throw new IOException("非法的内容长度：" + length);
+        }
+        byte[] content = new byte[length];
+        in.readFully(content);
+        if (typeId == TYPE_JSON) {
+            return jsonSerializer.deserialize(content);
+        }
+        ValueCodec<?> codec = codecsById.get(typeId);
+        if (codec == null) {
+            throw new IOException("未知的缓存值类型：" + typeId);
+        }
+        return codec.read(new DataInputStream(new ByteArrayInputStream(content)), version, this);
+    }
+
+    private Object readLegacy(byte[] bytes) {
+        if (!readLegacyJson) {
+            return null;
+        }
+        try {
+            return jsonSerializer.deserialize(bytes);
+        } catch (SerializationException e) {
+            // 无法解析的旧数据视为未命中，由调用方重新加载后覆盖
+            log.debug("旧格式缓存值解析失败，按未命中处理", e);
+            return null;
+        }
+    }
+}
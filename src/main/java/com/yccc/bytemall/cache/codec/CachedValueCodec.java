@@ -0,0 +1,47 @@
+package com.yccc.bytemall.cache.codec;
+
+import com.yccc.bytemall.cache.CachedValue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * CachedValue编解码，缓存值按其自身类型嵌套编码
+ * 版本1：delta、expireAt、value
+ */
+@SuppressWarnings("rawtypes")
+public class CachedValueCodec implements ValueCodec<CachedValue> {
+
+    @Override
+    public int typeId() {
+        return 1;
+    }
+
+    @Override
+    public Class<CachedValue> type() {
+        return CachedValue.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(CachedValue value, DataOutputStream out, BinaryCacheSerializer serializer) throws IOException {
+        out.writeLong(value.getDelta());
+        out.writeLong(value.getExpireAt());
+        serializer.writeValue(value.getValue(), out);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CachedValue read(DataInputStream in, int version, BinaryCacheSerializer serializer) throws IOException {
+        CachedValue cachedValue = new CachedValue();
+        cachedValue.setDelta(in.readLong());
+        cachedValue.setExpireAt(in.readLong());
+        cachedValue.setValue(serializer.readValue(in));
+        return cachedValue;
+    }
+}
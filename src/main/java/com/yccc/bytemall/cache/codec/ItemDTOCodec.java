@@ -0,0 +1,55 @@
+package com.yccc.bytemall.cache.codec;
+
+import com.yccc.bytemall.entity.dto.ItemDTO;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * ItemDTO编解码
+ * 版本1：id、name、price、image、category、brand、stock、description
+ */
+public class ItemDTOCodec implements ValueCodec<ItemDTO> {
+
+    @Override
+    public int typeId() {
+        return 2;
+    }
+
+    @Override
+    public Class<ItemDTO> type() {
+        return ItemDTO.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(ItemDTO value, DataOutputStream out, BinaryCacheSerializer serializer) throws IOException {
+        CodecIO.writeLong(out, value.getId());
+        CodecIO.writeString(out, value.getName());
+        CodecIO.writeInteger(out, value.getPrice());
+        CodecIO.writeString(out, value.getImage());
+        CodecIO.writeStrings(out, value.getCategory());
+        CodecIO.writeString(out, value.getBrand());
+        CodecIO.writeInteger(out, value.getStock());
+        CodecIO.writeString(out, value.getDescription());
+    }
+
+    @Override
+    public ItemDTO read(DataInputStream in, int version, BinaryCacheSerializer serializer) throws IOException {
+        ItemDTO itemDTO = new ItemDTO();
+        itemDTO.setId(CodecIO.readLong(in));
+        itemDTO.setName(CodecIO.readString(in));
+        itemDTO.setPrice(CodecIO.readInteger(in));
+        itemDTO.setImage(CodecIO.readString(in));
+        itemDTO.setCategory(CodecIO.readStrings(in));
+        itemDTO.setBrand(CodecIO.readString(in));
+        itemDTO.setStock(CodecIO.readInteger(in));
+        itemDTO.setDescription(CodecIO.readString(in));
+        return itemDTO;
+    }
+}
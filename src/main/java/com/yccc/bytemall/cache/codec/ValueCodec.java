@@ -0,0 +1,34 @@
+package com.yccc.bytemall.cache.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 单个类型的二进制编解码器，注册到BinaryCacheSerializer后生效
+ * 新增字段时提升version并追加到末尾，读取时按数据的版本号解析，旧版本数据中缺少的字段保持默认值；
+ * 每个值带长度前缀，旧代码读取新版本数据时忽略末尾不认识的字段
+ *
+ * @param <T> 编解码的类型
+ */
+public interface ValueCodec<T> {
+
+    /**
+     * 类型编号，写入数据中，一经使用不能修改或复用
+     */
+    int typeId();
+
+    Class<T> type();
+
+    /**
+     * 当前写入的版本号
+     */
+    int version();
+
+    void write(T value, DataOutputStream out, BinaryCacheSerializer serializer) throws IOException;
+
+    /**
+     * @param version 数据写入时的版本号
+     */
+    T read(DataInputStream in, int version, BinaryCacheSerializer serializer) throws IOException;
+}
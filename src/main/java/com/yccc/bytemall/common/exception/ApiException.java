@@ -4,6 +4,8 @@ package com.yccc.bytemall.common.exception;
 import com.yccc.bytemall.common.api.IErrorCode;
 
 public class ApiException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
     private IErrorCode errorCode;
 
     public ApiException(IErrorCode errorCode) {
@@ -3,18 +3,36 @@ package com.yccc.bytemall.config;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.yccc.bytemall.cache.codec.BinaryCacheSerializer;
+import com.yccc.bytemall.cache.codec.CachedValueCodec;
+import com.yccc.bytemall.cache.codec.ItemDTOCodec;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
 public class RedisConfig {
 
+    // 缓存值写入格式：binary、json
+    @Value("${byte.cache.codec.format:binary}")
+    private String codecFormat;
+
+    // 二进制缓存值超过该字节数时压缩
+    @Value("${byte.cache.codec.compress-threshold:1024}")
+    private int compressThreshold;
+
+    // 是否读取旧的JSON格式缓存值
+    @Value("${byte.cache.codec.read-legacy-json:true}")
+    private boolean readLegacyJson;
+
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory, RedisSerializer<Object> cacheValueSerializer) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(factory);
 
@@ -22,18 +40,35 @@ public class RedisConfig {
         template.setKeySerializer(new StringRedisSerializer());
         template.setHashKeySerializer(new StringRedisSerializer());
 
-        // 设置值（value）的序列化器
-        Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        objectMapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
-        jackson2JsonRedisSerializer.setObjectMapper(objectMapper);
-
-        template.setValueSerializer(jackson2JsonRedisSerializer);
-        template.setHashValueSerializer(jackson2JsonRedisSerializer);
+        // 设置值（value）的序列化器，与缓存管理器使用同一个
+        template.setValueSerializer(cacheValueSerializer);
+        template.setHashValueSerializer(cacheValueSerializer);
 
         template.afterPropertiesSet();
 
         return template;
     }
+
+    /**
+     * 缓存值序列化器，redisTemplate和缓存管理器共用
+     * 商品缓存使用二进制编码，其他类型仍使用JSON
+     */
+    @Bean
+    public RedisSerializer<Object> cacheValueSerializer() {
+        return new BinaryCacheSerializer(jsonSerializer(), compressThreshold, readLegacyJson, !"json".equals(codecFormat))
+                .register(new CachedValueCodec())
+                .register(new ItemDTOCodec());
+    }
+
+    /**
+     * 带类名的JSON序列化器，即原来的缓存值格式
+     */
+    static Jackson2JsonRedisSerializer<Object> jsonSerializer() {
+        Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL);
+        jackson2JsonRedisSerializer.setObjectMapper(objectMapper);
+        return jackson2JsonRedisSerializer;
+    }
 }
@@ -1,8 +1,7 @@
 package com.yccc.bytemall.config;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yccc.bytemall.cache.TwoLevelCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
@@ -14,7 +13,6 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -35,6 +33,14 @@ public class RedissonConfig {
     @Value("${byte.redis.password}")
     private String password;
 
+    // 本地缓存（L1）每个缓存的最大条目数
+    @Value("${byte.cache.local.maximum-size:5000}")
+    private int localMaximumSize;
+
+    // 本地缓存（L1）存活时间（秒）
+    @Value("${byte.cache.local.expire-seconds:60}")
+    private long localExpireSeconds;
+
 
     @Bean(destroyMethod = "shutdown")  // bean销毁时关闭Redisson实例，但不关闭Redis服务
     public RedissonClient redisson() {
@@ -53,33 +59,27 @@ public class RedissonConfig {
     }
 
     @Bean
-    public CacheManager RedisCacheManager(RedisConnectionFactory factory) {
+    public CacheManager RedisCacheManager(RedisConnectionFactory factory, RedissonClient redissonClient,
+                                          RedisSerializer<Object> cacheValueSerializer, MeterRegistry meterRegistry) {
         RedisSerializer<String> redisSerializer = new StringRedisSerializer();
-        Jackson2JsonRedisSerializer jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer(Object.class);
-        // 解决查询缓存转换异常的问题
-        ObjectMapper om = new ObjectMapper();
-        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        /**
-         * 新版本中om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL)已经被废弃
-         * 建议替换为om.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL)
-         */
-        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
-        jackson2JsonRedisSerializer.setObjectMapper(om);
         // 配置序列化解决乱码的问题
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
                 // 设置缓存过期时间  为解决缓存雪崩,所以将过期时间加随机值
                 .entryTtl(Duration.ofSeconds(60 * 60 + new Random().nextInt(60 * 10)))
                 // 设置key的序列化方式
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(redisSerializer))
-                // 设置value的序列化方式
-                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jackson2JsonRedisSerializer));
+                // 设置value的序列化方式，与redisTemplate使用同一个
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(cacheValueSerializer));
         // .disableCachingNullValues(); //为防止缓存击穿，所以允许缓存null值
         RedisCacheManager cacheManager = RedisCacheManager.builder(factory)
                 .cacheDefaults(config)
                 // 启用RedisCache以将缓存 put/evict 操作与正在进行的 Spring 管理的事务同步
                 .transactionAware()
                 .build();
-        return cacheManager;
+        // RedisCacheManager不再直接注册为bean，需要手动初始化
+        cacheManager.afterPropertiesSet();
+        // 在Redis缓存之前加一层本地缓存，热点数据直接从本地内存返回
+        return new TwoLevelCacheManager(cacheManager, redissonClient, localMaximumSize, localExpireSeconds, meterRegistry);
     }
 }
 
@@ -0,0 +1,63 @@
+package com.yccc.bytemall.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按Mapper方法记录SQL执行耗时，指标名sql.execution，标签mapper、method、command
+ * 耗时包含MyBatis参数映射和结果映射；批量执行器下的update只记录加入批次的耗时
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class SqlMetricsInterceptor implements Interceptor {
+
+    private final MeterRegistry meterRegistry;
+
+    // MappedStatement id -> Timer，避免每次执行都构建Timer
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public SqlMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return invocation.proceed();
+        } finally {
+            sample.stop(timers.computeIfAbsent(ms.getId(), id -> timer(ms)));
+        }
+    }
+
+    private Timer timer(MappedStatement ms) {
+        // id格式为 Mapper全类名.方法名
+        String id = ms.getId();
+        int index = id.lastIndexOf('.');
+        String mapper = id.substring(id.lastIndexOf('.', index - 1) + 1, index);
+        return Timer.builder("sql.execution")
+                .description("Mapper方法的SQL执行耗时")
+                .tag("mapper", mapper)
+                .tag("method", id.substring(index + 1))
+                .tag("command", ms.getSqlCommandType().name())
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
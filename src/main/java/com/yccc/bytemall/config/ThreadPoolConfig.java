@@ -0,0 +1,51 @@
+package com.yccc.bytemall.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ThreadPoolConfig {
+
+    /**
+     * 缓存异步刷新线程池
+     * 刷新属于尽力而为的操作，队列满时直接拒绝，由调用方继续返回旧值
+     */
+    @Bean
+    public ThreadPoolTaskExecutor cacheRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("cache-refresh-");
+        return executor;
+    }
+
+    /**
+     * 库存写回线程池，单线程执行批量写回
+     * 已有写回任务排队时拒绝新的触发，排队的任务会一并写回
+     */
+    @Bean
+    public ThreadPoolTaskExecutor stockSyncExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("stock-sync-");
+        return executor;
+    }
+
+    /**
+     * 商品变更发件箱的中继线程池，单线程处理
+     * 已有同步任务排队时拒绝新的触发，排队的任务会处理到发件箱为空
+     */
+    @Bean
+    public ThreadPoolTaskExecutor outboxRelayExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("outbox-relay-");
+        return executor;
+    }
+}
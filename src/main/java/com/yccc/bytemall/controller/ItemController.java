@@ -1,15 +1,31 @@
 package com.yccc.bytemall.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.yccc.bytemall.cache.ItemResponseCache;
+import com.yccc.bytemall.cache.ItemVersionCache;
 import com.yccc.bytemall.common.api.ApiResult;
+import com.yccc.bytemall.entity.dto.CursorPageDTO;
 import com.yccc.bytemall.entity.dto.ItemDTO;
+import com.yccc.bytemall.entity.dto.ItemImportResultDTO;
+import com.yccc.bytemall.entity.dto.OrderDetailDTO;
+import com.yccc.bytemall.entity.dto.StockReservationDTO;
 import com.yccc.bytemall.entity.po.Item;
 import com.yccc.bytemall.service.IItemService;
+import com.yccc.bytemall.util.ItemRecordReader;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/product")
@@ -19,10 +35,17 @@ public class ItemController {
     @Autowired
     private IItemService itemService;
 
+    @Autowired
+    private ItemResponseCache itemResponseCache;
+
+    @Autowired
+    private ItemVersionCache itemVersionCache;
+
     /**
      * 分页查询商品
      * @param page
      * @param pageSize
+     * @param categoryName 类别名称，多个类别用逗号分隔时返回同时属于这些类别的商品
      * @return
      */
 
@@ -34,26 +57,123 @@ public class ItemController {
         return ApiResult.success(itemService.pageQuery(page,pageSize,categoryName));
     }
 
+    /**
+     * 游标分页查询商品，带after参数时生效（第一页传空值）
+     * @param after 上一页返回的游标
+     * @param pageSize
+     * @param categoryName
+     * @param sort 排序方式：id、sold
+     * @param withTotal 是否返回总数
+     * @return
+     */
+    @GetMapping(value = "/list", params = "after")
+    public ApiResult<CursorPageDTO<ItemDTO>> queryItemByCursor(@RequestParam("after") String after,
+                                                              @RequestParam("pageSize") int pageSize,
+                                                              @RequestParam(value = "categoryName", required = false) String categoryName,
+                                                              @RequestParam(value = "sort", defaultValue = "id") String sort,
+                                                              @RequestParam(value = "withTotal", defaultValue = "false") boolean withTotal){
+        log.info("游标分页查询商品");
+        return ApiResult.success(itemService.scrollQuery(after, pageSize, categoryName, sort, withTotal));
+    }
+
     /**
      * 根据商品id查询商品详情
+     * 带If-None-Match且ETag（版本号和当前库存）未变化时返回304，不查询商品；不带时不做判断，只在成功的响应中附带ETag
+     * 开启响应缓存时，命中的请求直接写出预先序列化的JSON并返回null，不再经过消息转换器
      * @param id
+     * @param webRequest
+     * @param response
      * @return
      */
     @GetMapping("/{id}")
-    public ApiResult<ItemDTO> queryItemById(@PathVariable("id")long id){
+    public ApiResult<ItemDTO> queryItemById(@PathVariable("id")long id,
+                                            ServletWebRequest webRequest,
+                                            HttpServletResponse response) throws IOException {
         log.info("根据商品id查询商品详情");
+        boolean conditional = webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null;
+        if (conditional) {
+            Long version = itemVersionCache.getVersion(id);
+            if (version != null && notModified(itemVersionCache.etag(id, version), version, webRequest)) {
+                return null;
+            }
+        }
+        if (itemResponseCache.isEnabled() && itemResponseCache.contains(id)) {
+            tag(id, conditional, webRequest);
+            if (itemResponseCache.write(id, response)) {
+                return null;
+            }
+        }
         ItemDTO itemDTO = itemService.queryItemById(id);
         if (itemDTO == null){
             return ApiResult.failed("商品不存在");
         }
+        tag(id, conditional, webRequest);
+        if (itemResponseCache.isEnabled()) {
+            itemResponseCache.put(id, itemDTO);
+        }
         return ApiResult.success(itemDTO);
     }
 
+    /**
+     * 根据多个商品id查询商品详情
+     * ETag由所有商品的版本号和当前库存计算，任一商品变化或库存变化都会失效
+     * @param ids
+     * @param webRequest
+     * @return
+     */
     @GetMapping("/ids")
-    public ApiResult<List<ItemDTO>> queryItemByIds(@RequestParam("ids") List<Long> ids){
+    public ApiResult<List<ItemDTO>> queryItemByIds(@RequestParam("ids") List<Long> ids,
+                                                   ServletWebRequest webRequest){
         log.info("根据商品id查询商品详情");
-        return ApiResult.success(itemService.queryItemByIds(ids));
+        if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Map<Long, Long> versions = itemVersionCache.getVersions(ids);
+            if (!versions.isEmpty()) {
+                long lastModified = Collections.max(versions.values());
+                if (notModified(itemVersionCache.etag(ids, versions), lastModified, webRequest)) {
+                    return null;
+                }
+            }
+            return ApiResult.success(itemService.queryItemByIds(ids));
+        }
+        List<ItemDTO> itemDTOs = itemService.queryItemByIds(ids);
+        if (!itemDTOs.isEmpty()) {
+            // 商品已确认存在，版本号查询不会落到数据库中不存在的id上
+            Map<Long, Long> versions = itemVersionCache.getVersions(itemDTOs.stream()
+                    .map(ItemDTO::getId)
+                    .collect(Collectors.toList()));
+            if (!versions.isEmpty()) {
+                notModified(itemVersionCache.etag(ids, versions), Collections.max(versions.values()), webRequest);
+            }
+        }
+        return ApiResult.success(itemDTOs);
+    }
+
+    /**
+     * 在成功的响应中附带ETag，条件请求在判断时已设置
+     */
+    private void tag(long id, boolean conditional, ServletWebRequest webRequest) {
+        if (conditional) {
+            return;
+        }
+        Long version = itemVersionCache.getVersion(id);
+        if (version != null) {
+            notModified(itemVersionCache.etag(id, version), version, webRequest);
+        }
+    }
+
+    /**
+     * 设置ETag等响应头，并按If-None-Match判断是否未修改，未修改时已设置304状态
+     * 库存变化不体现在Last-Modified中，只带If-Modified-Since的请求不做判断
+     */
+    private boolean notModified(String etag, long lastModified, ServletWebRequest webRequest) {
+        HttpServletResponse response = webRequest.getResponse();
+        if (response != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+        return webRequest.checkNotModified(etag);
     }
+
     /**
      * 根据商品名称查询商品详情
      * @param name
@@ -71,7 +191,7 @@ public class ItemController {
      * @return
      */
     @PostMapping("/create")
-    public ApiResult createItem(@RequestBody ItemDTO itemDTO){
+    public ApiResult<Long> createItem(@RequestBody ItemDTO itemDTO){
         log.info("创建商品");
         Long id = itemService.createItem(itemDTO);
         if (id != null) {
@@ -81,13 +201,29 @@ public class ItemController {
         }
     }
 
+    /**
+     * 批量导入商品，请求体按行流式读取
+     * Content-Type为text/csv时按CSV解析（首行为表头），否则按NDJSON解析（每行一个商品）
+     * @param request
+     * @return 导入结果及失败的行
+     */
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "application/json", "text/csv"})
+    public ApiResult<ItemImportResultDTO> importItems(HttpServletRequest request) throws IOException {
+        log.info("批量导入商品");
+        String contentType = request.getContentType();
+        ItemRecordReader.Format format = contentType != null && contentType.startsWith("text/csv")
+                ? ItemRecordReader.Format.CSV
+                : ItemRecordReader.Format.NDJSON;
+        return ApiResult.success(itemService.importItems(request.getInputStream(), format));
+    }
+
     /**
      * 更新商品
      * @param itemDTO
      * @return
      */
     @PostMapping("/update")
-    public ApiResult updateItem(@RequestBody ItemDTO itemDTO){
+    public ApiResult<Void> updateItem(@RequestBody ItemDTO itemDTO){
         log.info("更新商品");
         boolean isSuccess = itemService.updateItem(itemDTO);
         if (isSuccess){
@@ -102,7 +238,7 @@ public class ItemController {
      * @return
      */
     @DeleteMapping("/delete/{id}")
-    public ApiResult deleteItem(@PathVariable("id") Long id){
+    public ApiResult<Void> deleteItem(@PathVariable("id") Long id){
         log.info("删除商品");
         boolean isSuccess = itemService.deleteItem(id);
         if (isSuccess){
@@ -111,4 +247,85 @@ public class ItemController {
             return ApiResult.failed("商品删除失败");
         }
     }
+
+    /**
+     * 扣减订单中所有商品的库存，任一商品库存不足时全部不扣
+     * @param orderDetails
+     * @return
+     */
+    @PostMapping("/stock/deduct")
+    public ApiResult<Void> deductStock(@RequestBody List<OrderDetailDTO> orderDetails){
+        log.info("扣减商品库存");
+        boolean isSuccess = itemService.deductStock(orderDetails);
+        if (isSuccess){
+            return ApiResult.success();
+        }else {
+            return ApiResult.failed("库存扣减失败");
+        }
+    }
+
+    /**
+     * 按订单令牌预占库存，支付完成后确认，取消或超时后释放
+     * @param reservation
+     * @return
+     */
+    @PostMapping("/stock/reserve")
+    public ApiResult<Void> reserveStock(@RequestBody StockReservationDTO reservation){
+        log.info("预占商品库存");
+        boolean isSuccess = itemService.reserveStock(reservation);
+        if (isSuccess){
+            return ApiResult.success();
+        }else {
+            return ApiResult.failed("库存预占失败");
+        }
+    }
+
+    /**
+     * 确认库存预占
+     * @param token 订单令牌
+     * @return
+     */
+    @PostMapping("/stock/confirm/{token}")
+    public ApiResult<Void> confirmReservation(@PathVariable("token") String token){
+        log.info("确认库存预占");
+        boolean isSuccess = itemService.confirmReservation(token);
+        if (isSuccess){
+            return ApiResult.success();
+        }else {
+            return ApiResult.failed("库存预占确认失败");
+        }
+    }
+
+    /**
+     * 释放库存预占
+     * @param token 订单令牌
+     * @return
+     */
+    @PostMapping("/stock/release/{token}")
+    public ApiResult<Void> releaseReservation(@PathVariable("token") String token){
+        log.info("释放库存预占");
+        boolean isSuccess = itemService.releaseReservation(token);
+        if (isSuccess){
+            return ApiResult.success();
+        }else {
+            return ApiResult.failed("预占不存在或已释放");
+        }
+    }
+
+    /**
+     * 调整商品库存的分段数，秒杀热点商品拆分为多个分段以分散扣减
+     * @param id
+     * @param segments 分段数，为1时合并
+     * @return
+     */
+    @PostMapping("/stock/segment")
+    public ApiResult<Void> segmentStock(@RequestParam("id") Long id, @RequestParam("segments") int segments){
+        log.info("调整商品库存分段");
+        boolean isSuccess = itemService.segmentStock(id, segments);
+        if (isSuccess){
+            return ApiResult.success();
+        }else {
+            return ApiResult.failed("库存分段调整失败");
+        }
+    }
 }
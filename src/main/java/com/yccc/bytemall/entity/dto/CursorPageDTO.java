@@ -0,0 +1,26 @@
+package com.yccc.bytemall.entity.dto;
+
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.List;
+
+@ApiModel(description = "游标分页结果")
+@Data
+@Accessors(chain = true)
+public class CursorPageDTO<T> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty("当前页数据")
+    private List<T> records;
+    @ApiModelProperty("下一页游标，没有更多数据时为null")
+    private String next;
+    @ApiModelProperty("是否还有更多数据")
+    private boolean hasMore;
+    @ApiModelProperty("总数，仅在请求总数时返回")
+    private Long total;
+}
@@ -0,0 +1,23 @@
+package com.yccc.bytemall.entity.dto;
+
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@ApiModel(description = "商品导入失败的行")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemImportFailureDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty("行号，从1开始，CSV包含表头行")
+    private long line;
+    @ApiModelProperty("失败原因")
+    private String reason;
+}
@@ -0,0 +1,27 @@
+package com.yccc.bytemall.entity.dto;
+
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+@ApiModel(description = "商品批量导入结果")
+@Data
+@Accessors(chain = true)
+public class ItemImportResultDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty("读取的数据行数")
+    private long total;
+    @ApiModelProperty("导入成功的行数")
+    private long succeeded;
+    @ApiModelProperty("导入失败的行数")
+    private long failed;
+    @ApiModelProperty("失败的行，超过上限时只返回前面的部分")
+    private List<ItemImportFailureDTO> failures = new ArrayList<>();
+}
@@ -0,0 +1,21 @@
+package com.yccc.bytemall.entity.dto;
+
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+@ApiModel(description = "库存预占请求")
+@Data
+@Accessors(chain = true)
+public class StockReservationDTO {
+    @ApiModelProperty("订单令牌，确认和释放预占时使用")
+    private String token;
+    @ApiModelProperty("预占有效期（秒），为空时使用默认值")
+    private Integer ttlSeconds;
+    @ApiModelProperty("订单明细")
+    private List<OrderDetailDTO> orderDetails;
+}
@@ -0,0 +1,40 @@
+package com.yccc.bytemall.entity.po;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDateTime;
+
+/**
+ * 商品变更事件（发件箱），与商品的写操作在同一事务中写入，由中继异步同步缓存后删除
+ * 表结构见 db/item_change_outbox.sql
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("item_change_outbox")
+public class ItemChangeEvent {
+
+    /**
+     * 事件id
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 变更的商品id
+     */
+    @TableField("item_id")
+    private Long itemId;
+
+    /**
+     * 事件写入时间
+     */
+    @TableField("create_time")
+    private LocalDateTime createTime;
+}
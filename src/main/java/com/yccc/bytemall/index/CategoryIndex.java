@@ -0,0 +1,264 @@
+package com.yccc.bytemall.index;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yccc.bytemall.entity.po.Category;
+import com.yccc.bytemall.mapper.CategoryMapper;
+import com.yccc.bytemall.util.CompressedBitmap;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * 类别到商品的内存索引，每个类别对应一个商品id压缩位图
+ * 支持类别成员判断、计数、多类别求交集以及分页，不访问数据库
+ * 商品的类别变更后通过发布订阅通知各节点，各节点从数据库重新加载该商品的类别
+ */
+@Component
+@DependsOnDatabaseInitialization
+@Slf4j
+public class CategoryIndex {
+
+    // 商品类别变更通知频道，消息为商品id
+    static final String REFRESH_TOPIC = "index:category:refresh";
+
+    // 批量变更通知频道，消息为逗号分隔的商品id
+    static final String REFRESH_BATCH_TOPIC = "index:category:refresh-batch";
+
+    // 启动构建时每批读取的类别数量
+    @Value("${byte.category-index.batch-size:5000}")
+    private int batchSize;
+
+    @Resource
+    private CategoryMapper categoryMapper;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    private final Map<String, CompressedBitmap> bitmaps = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean ready = false;
+
+    private RTopic refreshTopic;
+
+    private RTopic refreshBatchTopic;
+
+    @PostConstruct
+    public void init() {
+        refreshTopic = redissonClient.getTopic(REFRESH_TOPIC, LongCodec.INSTANCE);
+        refreshTopic.addListener(Long.class, (channel, itemId) -> reloadItem(itemId));
+        refreshBatchTopic = redissonClient.getTopic(REFRESH_BATCH_TOPIC, StringCodec.INSTANCE);
+        refreshBatchTopic.addListener(String.class, (channel, message) -> reloadItems(
+                Arrays.stream(message.split(",")).map(Long::valueOf).collect(Collectors.toList())));
+        // 异步构建索引
+        CompletableFuture.runAsync(this::initialize);
+    }
+
+    /**
+     * 以id游标分批扫描类别表构建索引
+     */
+    public void initialize() {
+        ready = false;
+        try {
+            long lastId = 0L;
+            long total = 0L;
+            List<Category> categories;
+            do {
+                // 读取和写入同一批都在写锁内，期间不会插入重新加载的结果，避免旧的批次覆盖更新后的类别
+                // 构建完成前索引不对外提供查询，持锁读取数据库不影响读请求
+                lock.writeLock().lock();
+                try {
+                    categories = categoryMapper.selectList(new QueryWrapper<Category>()
+                            .gt("id", lastId)
+                            .orderByAsc("id")
+                            .last("limit " + batchSize));
+                    for (Category category : categories) {
+                        bitmaps.computeIfAbsent(category.getName(), name -> new CompressedBitmap())
+                                .add(toIndexId(category.getItemId()));
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                if (!categories.isEmpty()) {
+                    lastId = categories.get(categories.size() - 1).getId();
+                    total += categories.size();
+                }
+            } while (categories.size() == batchSize);
+
+            ready = true;
+            log.info("类别索引构建完成，共{}个类别，{}条记录", bitmaps.size(), total);
+        } catch (Exception e) {
+            log.error("类别索引构建失败，类别查询继续走数据库", e);
+        }
+    }
+
+    /**
+     * 索引是否已构建完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 商品是否属于该类别
+     */
+    public boolean contains(String categoryName, Long itemId) {
+        if (itemId == null || itemId < 0 || itemId > Integer.MAX_VALUE) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            CompressedBitmap bitmap = bitmaps.get(categoryName);
+            return bitmap != null && bitmap.contains(toIndexId(itemId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 同时属于所有给定类别的商品数量
+     */
+    public long count(Collection<String> categoryNames) {
+        lock.readLock().lock();
+        try {
+            return resolve(categoryNames).cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 同时属于所有给定类别的商品，按id升序跳过offset个后取limit个
+     */
+    public List<Long> page(Collection<String> categoryNames, long offset, int limit) {
+        lock.readLock().lock();
+        try {
+            return toItemIds(resolve(categoryNames).slice(offset, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 同时属于所有给定类别的商品，按id升序取id大于afterId的limit个
+     */
+    public List<Long> after(Collection<String> categoryNames, long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            int after = (int) Math.min(afterId, Integer.MAX_VALUE);
+            return toItemIds(resolve(categoryNames).after(after, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 商品的类别在数据库中变更后调用，通知所有节点（包括本节点）重新加载该商品的类别
+     */
+    public void refreshItem(Long itemId) {
+        refreshTopic.publish(itemId);
+    }
+
+    /**
+     * 批量导入等场景下一次通知多个商品，各节点一次查询重新加载
+     */
+    public void refreshItems(Collection<Long> itemIds) {
+        if (!itemIds.isEmpty()) {
+            refreshBatchTopic.publish(itemIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+    }
+
+    private void reloadItem(Long itemId) {
+        List<Category> categories = categoryMapper.selectList(new QueryWrapper<Category>().eq("item_id", itemId));
+        int id = toIndexId(itemId);
+        lock.writeLock().lock();
+        try {
+            Iterator<CompressedBitmap> iterator = bitmaps.values().iterator();
+            while (iterator.hasNext()) {
+                CompressedBitmap bitmap = iterator.next();
+                if (bitmap.remove(id) && bitmap.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+            for (Category category : categories) {
+                bitmaps.computeIfAbsent(category.getName(), name -> new CompressedBitmap()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reloadItems(List<Long> itemIds) {
+        List<Category> categories = categoryMapper.selectList(new QueryWrapper<Category>().in("item_id", itemIds));
+        lock.writeLock().lock();
+        try {
+            Iterator<CompressedBitmap> iterator = bitmaps.values().iterator();
+            while (iterator.hasNext()) {
+                CompressedBitmap bitmap = iterator.next();
+                for (Long itemId : itemIds) {
+                    bitmap.remove(toIndexId(itemId));
+                }
+                if (bitmap.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+            for (Category category : categories) {
+                bitmaps.computeIfAbsent(category.getName(), name -> new CompressedBitmap())
+                        .add(toIndexId(category.getItemId()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 多个类别时从基数最小的位图开始求交集，调用方需持有读锁
+     */
+    private CompressedBitmap resolve(Collection<String> categoryNames) {
+        List<CompressedBitmap> matched = new ArrayList<>();
+        for (String categoryName : categoryNames) {
+            CompressedBitmap bitmap = bitmaps.get(categoryName);
+            if (bitmap == null) {
+                return new CompressedBitmap();
+            }
+            matched.add(bitmap);
+        }
+        if (matched.isEmpty()) {
+            return new CompressedBitmap();
+        }
+        matched.sort(Comparator.comparingLong(CompressedBitmap::cardinality));
+        CompressedBitmap result = matched.get(0);
+        for (int i = 1; i < matched.size() && !result.isEmpty(); i++) {
+            result = result.and(matched.get(i));
+        }
+        return result;
+    }
+
+    private List<Long> toItemIds(int[] ids) {
+        List<Long> itemIds = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            itemIds.add((long) id);
+        }
+        return itemIds;
+    }
+
+    private int toIndexId(Long itemId) {
+        if (itemId == null || itemId < 0 || itemId > Integer.MAX_VALUE) {
+            throw new IllegalStateException("商品id超出类别索引范围：" + itemId);
+        }
+        return itemId.intValue();
+    }
+}
@@ -0,0 +1,391 @@
+package com.yccc.bytemall.index;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yccc.bytemall.entity.po.Item;
+import com.yccc.bytemall.mapper.ItemMapper;
+import com.yccc.bytemall.util.CompressedBitmap;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * 商品名称的内存倒排索引
+ * 名称按字母数字连续片段切分，每个片段生成单字和二元组（n-gram）作为词项，适用于不分词的中文；
+ * 每个词项的倒排表为商品id压缩位图。查询先对查询串的全部词项求交集，再校验名称确实包含查询串的每个片段
+ * （二元组都出现不代表片段连续出现），按相关度、销量降序排序，
+ * 只保留前limit个结果，不对全部命中排序；销量随库存写回变化，写回后按商品id重新读取
+ */
+@Component
+@DependsOnDatabaseInitialization
+@Slf4j
+public class ItemNameIndex {
+
+    // 商品名称变更通知频道，消息为商品id
+    static final String REFRESH_TOPIC = "index:name:refresh";
+
+    // 批量变更通知频道，消息为逗号分隔的商品id
+    static final String REFRESH_BATCH_TOPIC = "index:name:refresh-batch";
+
+    // 销量变更通知频道，消息为逗号分隔的商品id，只重新读取销量
+    static final String SOLD_TOPIC = "index:name:sold";
+
+    // 排序规则：相关度（关键字占商品名称的比例，所有结果都包含关键字，名称越短相关度越高）、销量降序、id升序
+    private static final Comparator<Doc> RANKING = Comparator.comparingInt((Doc doc) -> doc.length)
+            .thenComparingInt(doc -> -doc.sold)
+            .thenComparingInt(doc -> doc.id);
+
+    // 启动构建时每批读取的商品数量
+    @Value("${byte.name-index.batch-size:5000}")
+    private int batchSize;
+
+    @Resource
+    private ItemMapper itemMapper;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    // 词项 -> 商品id位图
+    private final Map<String, CompressedBitmap> postings = new HashMap<>();
+
+    // 商品id -> 排序所需的商品信息
+    private final Map<Integer, Doc> docs = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean ready = false;
+
+    private RTopic refreshTopic;
+
+    private RTopic refreshBatchTopic;
+
+    private RTopic soldTopic;
+
+    @PostConstruct
+    public void init() {
+        refreshTopic = redissonClient.getTopic(REFRESH_TOPIC, LongCodec.INSTANCE);
+        refreshTopic.addListener(Long.class, (channel, itemId) -> reloadItem(itemId));
+        refreshBatchTopic = redissonClient.getTopic(REFRESH_BATCH_TOPIC, StringCodec.INSTANCE);
+        refreshBatchTopic.addListener(String.class, (channel, message) -> reloadItems(
+                Arrays.stream(message.split(",")).map(Long::valueOf).collect(Collectors.toList())));
+        soldTopic = redissonClient.getTopic(SOLD_TOPIC, StringCodec.INSTANCE);
+        soldTopic.addListener(String.class, (channel, message) -> reloadSold(
+                Arrays.stream(message.split(",")).map(Long::valueOf).collect(Collectors.toList())));
+        // 异步构建索引
+        CompletableFuture.runAsync(this::initialize);
+    }
+
+    /**
+     * 以id游标分批扫描商品表构建索引
+     */
+    public void initialize() {
+        ready = false;
+        try {
+            long lastId = 0L;
+            long total = 0L;
+            List<Item> items;
+            do {
+                // 与类别索引一样，读取和写入同一批都在写锁内，避免旧的批次覆盖并发重新加载的结果
+                // 构建完成前索引不对外提供查询，持锁读取数据库不影响读请求
+                lock.writeLock().lock();
+                try {
+                    items = itemMapper.selectList(new QueryWrapper<Item>()
+                            .select("id", "name", "sold")
+                            .gt("id", lastId)
+                            .orderByAsc("id")
+                            .last("limit " + batchSize));
+                    for (Item item : items) {
+                        // 重新构建时清理旧名称的词项
+                        removeDoc(item.getId());
+                        addDoc(item);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                if (!items.isEmpty()) {
+                    lastId = items.get(items.size() - 1).getId();
+                    total += items.size();
+                }
+            } while (items.size() == batchSize);
+
+            ready = true;
+            log.info("商品名称索引构建完成，共{}个商品，{}个词项", total, postings.size());
+        } catch (Exception e) {
+            log.error("商品名称索引构建失败，名称搜索继续走数据库全文索引", e);
+        }
+    }
+
+    /**
+     * 索引是否已构建完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 搜索名称包含关键字全部词项的商品
+     *
+     * @param keyword 关键字
+     * @param limit   最多返回的数量
+     * @return 按相关度、销量降序排列的商品id
+     */
+    public List<Long> search(String keyword, int limit) {
+        List<String> segments = segments(keyword);
+        Set<String> terms = new LinkedHashSet<>(queryTerms(keyword));
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        // 大小为limit的堆，堆顶为当前保留的结果中排名最靠后的
+        PriorityQueue<Doc> top = new PriorityQueue<>(limit, RANKING.reversed());
+        lock.readLock().lock();
+        try {
+            List<CompressedBitmap> bitmaps = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                CompressedBitmap bitmap = postings.get(term);
+                if (bitmap == null) {
+                    return new ArrayList<>();
+                }
+                bitmaps.add(bitmap);
+            }
+            // 从最短的倒排表开始求交集
+            bitmaps.sort(Comparator.comparingLong(CompressedBitmap::cardinality));
+            CompressedBitmap result = bitmaps.get(0);
+            for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+                result = result.and(bitmaps.get(i));
+            }
+            result.forEach(id -> {
+                Doc doc = docs.get(id);
+                if (!containsAll(doc.normalized, segments)) {
+                    return;
+                }
+                if (top.size() < limit) {
+                    top.add(doc);
+                } else if (RANKING.compare(doc, top.peek()) < 0) {
+                    top.poll();
+                    top.add(doc);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Doc> matched = new ArrayList<>(top);
+        matched.sort(RANKING);
+        List<Long> itemIds = new ArrayList<>(matched.size());
+        for (Doc doc : matched) {
+            itemIds.add((long) doc.id);
+        }
+        return itemIds;
+    }
+
+    /**
+     * 商品名称或销量在数据库中变更后调用，通知所有节点（包括本节点）重新加载该商品
+     */
+    public void refreshItem(Long itemId) {
+        refreshTopic.publish(itemId);
+    }
+
+    /**
+     * 批量导入等场景下一次通知多个商品，各节点一次查询重新加载
+     */
+    public void refreshItems(Collection<Long> itemIds) {
+        if (!itemIds.isEmpty()) {
+            refreshBatchTopic.publish(itemIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+    }
+
+    /**
+     * 库存写回后调用，通知所有节点重新读取这些商品的销量
+     */
+    public void refreshSold(Collection<Long> itemIds) {
+        if (!itemIds.isEmpty()) {
+            soldTopic.publish(itemIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+    }
+
+    private void reloadSold(List<Long> itemIds) {
+        List<Item> items = itemMapper.selectList(new QueryWrapper<Item>()
+                .select("id", "sold")
+                .in("id", itemIds));
+        lock.writeLock().lock();
+        try {
+            for (Item item : items) {
+                Doc doc = item.getId() <= Integer.MAX_VALUE ? docs.get(item.getId().intValue()) : null;
+                if (doc != null && item.getSold() != null) {
+                    docs.put(doc.id, new Doc(doc.id, doc.name, doc.normalized, item.getSold()));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reloadItem(Long itemId) {
+        Item item = itemMapper.selectById(itemId);
+        lock.writeLock().lock();
+        try {
+            removeDoc(itemId);
+            if (item != null) {
+                addDoc(item);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reloadItems(List<Long> itemIds) {
+        List<Item> items = itemMapper.selectBatchIds(itemIds);
+        lock.writeLock().lock();
+        try {
+            for (Long itemId : itemIds) {
+                removeDoc(itemId);
+            }
+            for (Item item : items) {
+                addDoc(item);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 调用方需持有写锁
+     */
+    private void addDoc(Item item) {
+        Long itemId = item.getId();
+        if (itemId == null || itemId < 0 || itemId > Integer.MAX_VALUE || item.getName() == null) {
+            return;
+        }
+        int id = itemId.intValue();
+        Doc doc = new Doc(id, item.getName(), normalize(item.getName()), item.getSold() == null ? 0 : item.getSold());
+        docs.put(id, doc);
+        for (String term : indexTerms(doc.name)) {
+            postings.computeIfAbsent(term, key -> new CompressedBitmap()).add(id);
+        }
+    }
+
+    /**
+     * 调用方需持有写锁
+     */
+    private void removeDoc(Long itemId) {
+        if (itemId == null || itemId < 0 || itemId > Integer.MAX_VALUE) {
+            return;
+        }
+        int id = itemId.intValue();
+        Doc doc = docs.remove(id);
+        if (doc == null) {
+            return;
+        }
+        for (String term : indexTerms(doc.name)) {
+            CompressedBitmap bitmap = postings.get(term);
+            if (bitmap != null && bitmap.remove(id) && bitmap.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    /**
+     * 索引词项：每个片段的全部单字和二元组
+     */
+    static Set<String> indexTerms(String text) {
+        Set<String> terms = new HashSet<>();
+        for (String segment : segments(text)) {
+            for (int i = 0; i < segment.length(); i++) {
+                terms.add(segment.substring(i, i + 1));
+                if (i + 1 < segment.length()) {
+                    terms.add(segment.substring(i, i + 2));
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 查询词项：长度为1的片段取单字，其余取二元组
+     */
+    static List<String> queryTerms(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String segment : segments(text)) {
+            if (segment.length() == 1) {
+                terms.add(segment);
+            }
+            for (int i = 0; i + 1 < segment.length(); i++) {
+                terms.add(segment.substring(i, i + 2));
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 转小写后按非字母数字字符切分
+     */
+    private static List<String> segments(String text) {
+        List<String> segments = new ArrayList<>();
+        if (text == null) {
+            return segments;
+        }
+        StringBuilder segment = new StringBuilder();
+        String normalized = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                segment.append(c);
+            } else if (segment.length() > 0) {
+                segments.add(segment.toString());
+                segment.setLength(0);
+            }
+        }
+        if (segment.length() > 0) {
+            segments.add(segment.toString());
+        }
+        return segments;
+    }
+
+    /**
+     * 各片段以空格连接，查询片段只含字母数字，不会跨片段匹配
+     */
+    private static String normalize(String text) {
+        return String.join(" ", segments(text));
+    }
+
+    private static boolean containsAll(String normalized, List<String> segments) {
+        for (String segment : segments) {
+            if (!normalized.contains(segment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Doc {
+        private final int id;
+        private final String name;
+        // 规范化后的名称，用于校验是否包含查询片段
+        private final String normalized;
+        private final int sold;
+        // 规范化后的名称长度（不含分隔符）
+        private final int length;
+
+        private Doc(int id, String name, String normalized, int sold) {
+            this.id = id;
+            this.name = name;
+            this.normalized = normalized;
+            this.sold = sold;
+            this.length = normalized.length() - (int) normalized.chars().filter(c -> c == ' ').count();
+        }
+    }
+}
@@ -2,9 +2,26 @@ package com.yccc.bytemall.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yccc.bytemall.entity.po.Category;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 
 @Mapper
 public interface CategoryMapper extends BaseMapper<Category> {
+
+    /**
+     * 多行插入类别
+     * @param categories
+     * @return
+     */
+    @Insert("<script>" +
+            "insert into category (name, item_id) values " +
+            "<foreach collection=\"categories\" item=\"category\" separator=\",\">" +
+            "(#{category.name}, #{category.itemId})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("categories") List<Category> categories);
 }
@@ -0,0 +1,34 @@
+package com.yccc.bytemall.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.yccc.bytemall.entity.po.ItemChangeEvent;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface ItemChangeEventMapper extends BaseMapper<ItemChangeEvent> {
+
+    /**
+     * 多行写入变更事件，需在商品写操作的事务中调用
+     * @param itemIds 变更的商品id
+     * @return
+     */
+    @Insert("<script>" +
+            "insert into item_change_outbox (item_id) values " +
+            "<foreach collection=\"itemIds\" item=\"itemId\" separator=\",\">(#{itemId})</foreach>" +
+            "</script>")
+    int insertBatch(@Param("itemIds") Collection<Long> itemIds);
+
+    /**
+     * 按id升序读取最早的一批事件
+     * @param limit 数量
+     * @return
+     */
+    @Select("select id, item_id, create_time from item_change_outbox order by id limit #{limit}")
+    List<ItemChangeEvent> selectOldest(@Param("limit") int limit);
+}
@@ -2,14 +2,114 @@ package com.yccc.bytemall.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yccc.bytemall.entity.po.Item;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
 
 @Mapper
 public interface ItemMapper extends BaseMapper<Item> {
 
-    @Select("select id from item where MATCH(name) AGAINST (${name})")
+    /**
+     * 全文检索商品名称，使用布尔模式，带双引号的关键字按短语匹配
+     * @param name
+     * @return
+     */
+    @Select("select id from item where MATCH(name) AGAINST (#{name} IN BOOLEAN MODE)")
     List<Long> queryItemByName(String name);
+
+    /**
+     * 按id游标分批查询商品id，避免深分页的OFFSET扫描
+     * @param lastId 上一批的最大id
+     * @param limit  本批数量
+     * @return
+     */
+    @Select("select id from item where id > #{lastId} order by id limit #{limit}")
+    List<Long> selectIdsAfter(@Param("lastId") Long lastId, @Param("limit") int limit);
+
+    /**
+     * 按热度（销量+评论数）降序查询前N个商品id，用于启动时预热缓存
+     * 先按与销量游标分页相同的(sold, id)索引取销量最高的候选商品，只读取这部分索引记录，
+     * 再在候选中按销量与评论数之和排序，不对全表排序
+     * @param candidates 候选数量，不小于limit
+     * @param limit 数量
+     * @return
+     */
+    @Select("select id from (select id, sold, comment_count from item order by sold desc, id desc limit #{candidates}) t " +
+            "order by sold + comment_count desc, id desc limit #{limit}")
+    List<Long> selectHotIds(@Param("candidates") int candidates, @Param("limit") int limit);
+
+    /**
+     * 按id升序的游标分页查询，可按类别过滤
+     * 按类别过滤时以category表的(name, item_id)索引驱动，条件和排序都用c.item_id
+     * @param categoryName 类别名称，为null时不过滤
+     * @param afterId      上一页最后一条的id，为null时查询第一页
+     * @param limit        本页数量
+     * @return
+     */
+    @Select("<script>" +
+            "select i.* from item i" +
+            "<choose>" +
+            "<when test=\"categoryName != null\">" +
+            " join category c on c.item_id = i.id and c.name = #{categoryName}" +
+            "<if test=\"afterId != null\"> where c.item_id &gt; #{afterId}</if>" +
+            " order by c.item_id" +
+            "</when>" +
+            "<otherwise>" +
+            "<if test=\"afterId != null\"> where i.id &gt; #{afterId}</if>" +
+            " order by i.id" +
+            "</otherwise>" +
+            "</choose>" +
+            " limit #{limit}" +
+            "</script>")
+    List<Item> selectPageAfterId(@Param("categoryName") String categoryName,
+                                 @Param("afterId") Long afterId,
+                                 @Param("limit") int limit);
+
+    /**
+     * 按销量降序的游标分页查询，销量相同时按id降序，可按类别过滤
+     * @param categoryName 类别名称，为null时不过滤
+     * @param afterSold    上一页最后一条的销量，为null时查询第一页
+     * @param afterId      上一页最后一条的id
+     * @param limit        本页数量
+     * @return
+     */
+    @Select("<script>" +
+            "select i.* from item i" +
+            "<if test=\"categoryName != null\"> join category c on c.item_id = i.id and c.name = #{categoryName}</if>" +
+            "<where><if test=\"afterSold != null\"> (i.sold &lt; #{afterSold} or (i.sold = #{afterSold} and i.id &lt; #{afterId}))</if></where>" +
+            " order by i.sold desc, i.id desc limit #{limit}" +
+            "</script>")
+    List<Item> selectPageBySold(@Param("categoryName") String categoryName,
+                                @Param("afterSold") Integer afterSold,
+                                @Param("afterId") Long afterId,
+                                @Param("limit") int limit);
+
+    /**
+     * 按增量更新库存和销量，用于将Redis中已发生的库存变更批量写回数据库
+     * @param id
+     * @param stockDelta 库存增量，扣减时为负数
+     * @param soldDelta  销量增量
+     * @return
+     */
+    @Update("update item set stock = stock + #{stockDelta}, sold = sold + #{soldDelta} where id = #{id}")
+    int applyStockDelta(@Param("id") Long id, @Param("stockDelta") long stockDelta, @Param("soldDelta") long soldDelta);
+
+    /**
+     * 多行插入商品，生成的id按顺序回填到各商品
+     * @param items
+     * @return
+     */
+    @Insert("<script>" +
+            "insert into item (name, price, stock, image, brand, description) values " +
+            "<foreach collection=\"items\" item=\"item\" separator=\",\">" +
+            "(#{item.name}, #{item.price}, #{item.stock}, #{item.image}, #{item.brand}, #{item.description})" +
+            "</foreach>" +
+            "</script>")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insertBatch(@Param("items") List<Item> items);
 }
@@ -2,10 +2,15 @@ package com.yccc.bytemall.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.yccc.bytemall.entity.dto.CursorPageDTO;
 import com.yccc.bytemall.entity.dto.ItemDTO;
+import com.yccc.bytemall.entity.dto.ItemImportResultDTO;
 import com.yccc.bytemall.entity.dto.OrderDetailDTO;
+import com.yccc.bytemall.entity.dto.StockReservationDTO;
 import com.yccc.bytemall.entity.po.Item;
+import com.yccc.bytemall.util.ItemRecordReader;
 
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
 
@@ -35,12 +40,23 @@ public interface IItemService extends IService<Item> {
     /**
      * 分页查询商品信息
      * @param page
-     * @param pageSize
-     * @param categoryName
+     * @param pageSize 每页条数，必须大于0
+     * @param categoryName 类别名称，多个类别用逗号分隔时返回同时属于这些类别的商品
      * @return
      */
     Page<ItemDTO> pageQuery(int page, int pageSize, String categoryName);
 
+    /**
+     * 游标分页查询商品信息，不使用OFFSET，翻到任意深度的代价相同
+     * @param after        上一页返回的游标，为空时查询第一页
+     * @param pageSize     每页数量，超过上限时按上限返回
+     * @param categoryName 类别名称，为空时不过滤
+     * @param sort         排序方式：id（默认，按id升序）、sold（按销量降序），其他值视为非法参数
+     * @param withTotal    是否返回总数
+     * @return
+     */
+    CursorPageDTO<ItemDTO> scrollQuery(String after, int pageSize, String categoryName, String sort, boolean withTotal);
+
     /**
      * 创建商品
      * @param itemDTO
@@ -48,6 +64,14 @@ public interface IItemService extends IService<Item> {
      */
     public Long createItem(ItemDTO itemDTO);
 
+    /**
+     * 批量导入商品，按块分事务多行插入商品和类别，单行失败不影响其他行
+     * @param in     导入数据，逐行读取
+     * @param format 数据格式
+     * @return 导入结果及失败的行
+     */
+    ItemImportResultDTO importItems(InputStream in, ItemRecordReader.Format format);
+
     /**
      * 更新商品信息
      * @param itemDTO
@@ -61,4 +85,54 @@ public interface IItemService extends IService<Item> {
      * @return
      */
     boolean deleteItem(Long id);
+
+    /**
+     * 原子扣减一个订单所有商品的库存，任一商品库存不足时全部不扣
+     * @param orderDetails 订单明细，同一商品可出现多行
+     * @return
+     */
+    boolean deductStock(List<OrderDetailDTO> orderDetails);
+
+    /**
+     * 将商品库存拆分为多个分段计数，分散秒杀热点商品的扣减压力
+     * @param id
+     * @param segments 分段数，为1时合并为单个计数
+     * @return
+     */
+    boolean segmentStock(Long id, int segments);
+
+    /**
+     * 按订单令牌预占库存，有效期内未确认的预占自动释放
+     * @param reservation
+     * @return
+     */
+    boolean reserveStock(StockReservationDTO reservation);
+
+    /**
+     * 确认预占，转为销售
+     * @param token 订单令牌
+     * @return
+     */
+    boolean confirmReservation(String token);
+
+    /**
+     * 释放预占，库存加回
+     * @param token 订单令牌
+     * @return 预占不存在时返回false
+     */
+    boolean releaseReservation(String token);
+
+    /**
+     * 预热缓存，按热度（销量+评论数）加载前N个商品，回填Redis和本节点的本地缓存
+     * @param topN      预热的商品数量
+     * @param batchSize 每批加载的商品数量
+     * @return 实际预热的商品数量
+     */
+    int warmUpCache(int topN, int batchSize);
+
+    /**
+     * 按数据库中的最新数据同步商品的缓存、布隆过滤器和内存索引，由发件箱中继调用
+     * @param ids 变更的商品id，已不存在的商品写入空值缓存
+     */
+    void syncItemCaches(Collection<Long> ids);
 }
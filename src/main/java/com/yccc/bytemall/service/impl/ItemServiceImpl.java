@@ -4,35 +4,73 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.yccc.bytemall.cache.CachedValue;
+import com.yccc.bytemall.cache.HotItemCache;
+import com.yccc.bytemall.cache.ItemBloomFilter;
+import com.yccc.bytemall.cache.ItemChangedEvent;
+import com.yccc.bytemall.cache.ItemVersionCache;
+import com.yccc.bytemall.cache.NegativeItemCache;
+import com.yccc.bytemall.cache.TwoLevelCache;
+import com.yccc.bytemall.common.exception.ApiAsserts;
+import com.yccc.bytemall.entity.dto.CursorPageDTO;
 import com.yccc.bytemall.entity.dto.ItemDTO;
+import com.yccc.bytemall.entity.dto.ItemImportFailureDTO;
+import com.yccc.bytemall.entity.dto.ItemImportResultDTO;
 import com.yccc.bytemall.entity.dto.OrderDetailDTO;
+import com.yccc.bytemall.entity.dto.StockReservationDTO;
 import com.yccc.bytemall.entity.po.Category;
 import com.yccc.bytemall.entity.po.Item;
+import com.yccc.bytemall.index.CategoryIndex;
+import com.yccc.bytemall.index.ItemNameIndex;
 import com.yccc.bytemall.mapper.CategoryMapper;
+import com.yccc.bytemall.mapper.ItemChangeEventMapper;
 import com.yccc.bytemall.mapper.ItemMapper;
 import com.yccc.bytemall.service.IItemService;
-import com.yccc.bytemall.util.BloomFilterUtil;
+import com.yccc.bytemall.stock.StockCounter;
+import com.yccc.bytemall.stock.StockReservation;
+import com.yccc.bytemall.stock.StockWriteBehind;
+import com.yccc.bytemall.util.ItemRecordReader;
+import com.yccc.bytemall.util.RequestCollapser;
+import com.yccc.bytemall.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RBloomFilter;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.ValueOperations;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 @Service
 @Slf4j
@@ -41,114 +79,373 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
     @Autowired
     private CategoryMapper categoryMapper;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private RedisTemplate<String, Object> redisTemplate;
 
-    private int exipreTime = 30 * 60 * 1000;
+    // 商品缓存的过期时间（毫秒），变更由发件箱中继同步，过期时间只是兜底
+    @Value("${byte.cache.item-expire-ms:1800000}")
+    private int exipreTime;
 
-    // 预期插入数量
-    static long expectedInsertions = 80000L;
-    // 误判率
-    static double falseProbability = 0.05;
+    // 游标分页的排序方式
+    static final String SORT_BY_ID = "id";
+    static final String SORT_BY_SOLD = "sold";
 
-    // 非法请求所返回的JSON
-    static String illegalJson = "[\n" +
-            "    \"com.yccc.bytemall.entity.Item\",\n" +
-            "    {\n" +
-            "        \"id\": null,\n" +
-            "        \"name\": \"null\",\n" +
-            "        \"description\": null,\n" +
-            "        \"price\": null\n" +
-            "    }\n" +
-            "]";
+    @Resource
+    private ItemBloomFilter itemBloomFilter;
 
-    private RBloomFilter<Long> bloomFilter = null;
+    @Resource
+    private CategoryIndex categoryIndex;
 
     @Resource
-    private BloomFilterUtil bloomFilterUtil;
+    private ItemNameIndex itemNameIndex;
+
+    // 名称搜索最多返回的商品数量
+    @Value("${byte.name-index.max-results:100}")
+    private int searchMaxResults;
+
+    // 游标分页每页最多的商品数量，超出时按该值返回
+    @Value("${byte.page.max-page-size:100}")
+    private int maxPageSize;
 
     @Resource
     private RedissonClient redissonClient;
     @Autowired
     private ItemMapper itemMapper;
+    @Autowired
+    private CacheManager cacheManager;
+
+    // 等待商品重建锁的最长时间（秒）
+    private long lockWaitTime = 3;
+    // 商品重建锁的持有时间（秒），防止节点宕机后锁无法释放
+    private long lockLeaseTime = 10;
+
+    private final SingleFlight<Long, ItemDTO> itemLoadFlight = new SingleFlight<>();
+
+    // 合并查询中未命中的商品按批次加载，key为排序后的id列表，相同的并发批次只查询一次数据库
+    private final SingleFlight<List<Long>, Map<Long, ItemDTO>> batchLoadFlight = new SingleFlight<>();
+
+    // 预热时按销量选取的候选商品数量为预热数量的倍数，再按销量与评论数之和排序
+    @Value("${byte.warm-up.candidate-factor:3}")
+    private int warmUpCandidateFactor;
+
+    // 提前刷新的激进程度，越大越早刷新
+    @Value("${byte.cache.early-refresh-beta:1.0}")
+    private double earlyRefreshBeta;
+
+    // 正在异步刷新的商品id
+    private final Set<Long> refreshingIds = ConcurrentHashMap.newKeySet();
+
+    @Resource
+    private ThreadPoolTaskExecutor cacheRefreshExecutor;
+
+    @Resource
+    private StockCounter stockCounter;
+
+    @Resource
+    private StockWriteBehind stockWriteBehind;
+
+    @Resource
+    private StockReservation stockReservation;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    // 批量导入每个事务插入的行数
+    @Value("${byte.import.chunk-size:1000}")
+    private int importChunkSize;
+
+    // 批量导入结果中最多返回的失败行数
+    @Value("${byte.import.max-reported-failures:1000}")
+    private int importMaxReportedFailures;
+
+    // 库存最多拆分的分段数
+    @Value("${byte.stock.segment.max-segments:64}")
+    private int maxStockSegments;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private HotItemCache hotItemCache;
+
+    @Resource
+    private ItemChangeEventMapper itemChangeEventMapper;
+
+    @Resource
+    private NegativeItemCache negativeItemCache;
+
+    @Resource
+    private ItemVersionCache itemVersionCache;
+
+    // 是否将并发的单个商品查询合并为批量查询
+    @Value("${byte.collapser.enabled:true}")
+    private boolean collapserEnabled;
+
+    // 合并窗口（微秒）
+    @Value("${byte.collapser.window-micros:1000}")
+    private long collapserWindowMicros;
+
+    // 每批最多合并的商品数量
+    @Value("${byte.collapser.max-batch-size:64}")
+    private int collapserMaxBatchSize;
+
+    private RequestCollapser<Long, ItemDTO> itemCollapser;
+
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
+    // 布隆过滤器拦截的非法id数量
+    private Counter bloomRejects;
+
+    // 批量查询的商品数量及其中缓存未命中的数量
+    private DistributionSummary batchSizes;
+    private DistributionSummary batchMisses;
 
     @PostConstruct
     public void init() {
-        // 异步初始化布隆过滤器
-        CompletableFuture.runAsync(this::initializeBloomFilter);
+        itemCollapser = new RequestCollapser<>(collapserMaxBatchSize, collapserWindowMicros, TimeUnit.MICROSECONDS,
+                this::fetchItemsToLocal);
+        initMetrics();
     }
 
-    @Async
-    public void initializeBloomFilter() {
-        // 启动项目时初始化bloomFilter
-        bloomFilter = bloomFilterUtil.create("itemIdWhiteList", expectedInsertions, falseProbability);
+    private void initMetrics() {
+        bloomRejects = Counter.builder("item.bloom.rejects")
+                .description("布隆过滤器拦截的不存在商品id数量")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("item.batch.size")
+                .description("批量查询的商品数量（去重后）")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        batchMisses = DistributionSummary.builder("item.batch.misses")
+                .description("批量查询中缓存未命中的商品数量")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
-        int pageSize = 100000;
-        int pageNumber = 0;
-        List<Item> itemsList;
+    @Override
+    public ItemDTO queryItemById(Long id) {
+        // 热点商品直接从常驻内存返回，不访问L1、Redis
+        // 布隆过滤器和本地空值缓存都在本地判断，不存在的id不访问Redis
+        if (!itemBloomFilter.mightContain(id)) {
+            bloomRejects.increment();
+            log.debug("所要查询的商品不在布隆过滤器中，为非法key：{}", id);
+            return null;
+        }
+        if (negativeItemCache.containsLocal(id)) {
+            return null;
+        }
+        boolean hot = hotItemCache.record(id);
+        if (hot) {
+            ItemDTO pinned = hotItemCache.get(id);
+            if (pinned != null) {
+                return withLiveStock(pinned);
+            }
+        }
+        Cache itemCache = cacheManager.getCache("item");
+        if (collapserEnabled && itemCache instanceof TwoLevelCache) {
+            return queryItemCollapsed(id, (TwoLevelCache) itemCache, hot);
+        }
+        Cache.ValueWrapper cached = itemCache.get(id);
+        if (cached != null) {
+            ItemDTO itemDTO = unwrap(id, cached.get());
+            if (hot && itemDTO != null) {
+                hotItemCache.pin(id, itemDTO);
+            }
+            return withLiveStock(itemDTO);
+        }
+        // 布隆过滤器误判或其他节点已确认不存在的id，不再加锁查询数据库
+        if (!negativeItemCache.containsRemote(Collections.singletonList(id)).isEmpty()) {
+            return null;
+        }
+        // 同一节点上对同一商品的并发未命中只加载一次，其余请求等待结果
+        ItemDTO itemDTO = itemLoadFlight.execute(id, () -> loadItem(id, itemCache));
+        if (hot && itemDTO != null) {
+            hotItemCache.pin(id, itemDTO);
+        }
+        return withLiveStock(itemDTO);
+    }
 
-        itemsList = itemMapper.selectPage(new Page<>(pageNumber, pageSize), null).getRecords();
-        for (Item item : itemsList) {
-            bloomFilter.add(item.getId());
+    /**
+     * L1未命中时与同一时间窗口内的其他单个查询合并，一次multiGet查询Redis，未命中的一次查询数据库
+     * @param id
+     * @param itemCache
+     * @param hot 是否为热点商品
+     * @return
+     */
+    private ItemDTO queryItemCollapsed(Long id, TwoLevelCache itemCache, boolean hot) {
+        Cache.ValueWrapper cached = itemCache.getLocal(id);
+        ItemDTO itemDTO = cached != null ? unwrap(id, cached.get()) : itemCollapser.get(id);
+        if (hot && itemDTO != null) {
+            hotItemCache.pin(id, itemDTO);
         }
+        return withLiveStock(itemDTO);
+    }
 
-        log.info("布隆过滤器初始化完成");
+    /**
+     * 合并后的批量查询，Redis中的原始缓存值回填本节点的L1缓存，保留重建耗时供提前刷新判断；
+     * 未命中的整批一次查询数据库和类别，写入Redis后回填L1
+     * @param ids
+     * @return
+     */
+    private Map<Long, ItemDTO> fetchItemsToLocal(List<Long> ids) {
+        return fetchItems(ids, (TwoLevelCache) cacheManager.getCache("item"));
     }
 
-    @Override
-    @Cacheable(cacheNames = "item", key = "#id", unless = "#result == null")
-    public ItemDTO queryItemById(Long id) {
-        if (!bloomFilter.contains(id)) {
-            log.info("所要查询的数据既不在缓存中，也不在数据库中，为非法key");
-            redissonClient.getBucket("item::" + id, new StringCodec()).set(illegalJson, new Random().nextInt(200) + 300, TimeUnit.SECONDS);
+    /**
+     * 用库存计数（分段时为各分段之和）覆盖缓存中的库存，计数未加载时保持缓存中的值
+     * 计数取本节点的短时视图，热点读取不必每次访问Redis
+     * @param itemDTO
+     * @return
+     */
+    private ItemDTO withLiveStock(ItemDTO itemDTO) {
+        if (itemDTO == null) {
             return null;
         }
-        Item item = null;
-        String lockKey = "lock:item::" + id;
+        return withStock(itemDTO, stockCounter.peek(itemDTO.getId()));
+    }
+
+    /**
+     * 缓存对象在本地缓存中共享，不能直接修改，需复制后返回
+     */
+    private static ItemDTO withStock(ItemDTO itemDTO, Integer stock) {
+        if (itemDTO == null || stock == null || stock.equals(itemDTO.getStock())) {
+            return itemDTO;
+        }
+        ItemDTO copy = new ItemDTO();
+        BeanUtils.copyProperties(itemDTO, copy);
+        copy.setStock(stock);
+        return copy;
+    }
+
+    /**
+     * 持有分布式锁重建商品缓存，保证同一时刻只有一个节点查询数据库
+     * @param id
+     * @param itemCache
+     * @return
+     */
+    private ItemDTO loadItem(Long id, Cache itemCache) {
+        RLock lock = redissonClient.getLock("lock:item::" + id);
+        boolean locked = false;
         try {
-            // 获取锁
-            boolean islock = tryLock(lockKey);
-            RLock lock = redissonClient.getLock(lockKey);
-            if(!islock){
-                //获取锁失败，等待一段时间再重试
-                Thread.sleep(50);
-                return queryItemById(id);
+            // 等锁期间由Redisson通过发布订阅唤醒，无需轮询
+            Timer.Sample sample = Timer.start(meterRegistry);
+            locked = lock.tryLock(lockWaitTime, lockLeaseTime, TimeUnit.SECONDS);
+            sample.stop(lockWaitTimer("load", locked ? "acquired" : "timeout"));
+            if (locked) {
+                // 等锁期间其他节点可能已经重建了缓存
+                Cache.ValueWrapper cached = itemCache.get(id);
+                if (cached != null) {
+                    return unwrap(id, cached.get());
+                }
+            } else {
+                meterRegistry.counter("item.lock.failures", "operation", "load").increment();
+                log.warn("获取商品锁超时，直接查询数据库，id：{}", id);
             }
             // 查询商品信息
-            item = baseMapper.selectById(id);
-            // 若商品存在，组装商品信息
+            long start = System.currentTimeMillis();
+            Item item = baseMapper.selectById(id);
             if (item == null) {
-                // 商品不存在，打印错误日志并返回null
+                // 商品不存在，记录空值缓存并返回null
                 log.error("商品不存在");
+                negativeItemCache.addAll(Collections.singletonList(id));
                 return null;
             }
+            ItemDTO itemDTO = itemToItemDTO(item);
+            // 释放锁之前写入缓存，后续拿到锁的节点可以直接命中
+            itemCache.put(id, CachedValue.of(itemDTO, System.currentTimeMillis() - start, exipreTime));
+            return itemDTO;
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         } finally {
-            // 释放锁
-            unLock(lockKey);
+            // 只释放自己持有的锁
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
         }
-        return itemToItemDTO(item);
     }
 
     /**
-     * 尝试获取锁
-     * @param key
+     * 商品重建锁的等待耗时，按是否拿到锁区分
+     */
+    private Timer lockWaitTimer(String operation, String result) {
+        return Timer.builder("item.lock.wait")
+                .description("等待商品重建锁的耗时")
+                .tag("operation", operation)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 解析缓存值，按XFetch规则判断是否需要提前异步刷新，刷新完成前继续返回当前值
+     * 兼容直接缓存ItemDTO的数据
+     * @param id
+     * @param cached
      * @return
      */
-    private boolean tryLock(String key){
-        Boolean flag = redisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return flag != null && flag;
+    @SuppressWarnings("unchecked")
+    private ItemDTO unwrap(Long id, Object cached) {
+        if (cached instanceof CachedValue) {
+            CachedValue<ItemDTO> cachedValue = (CachedValue<ItemDTO>) cached;
+            if (cachedValue.shouldRefresh(earlyRefreshBeta)) {
+                refreshAsync(id);
+            }
+            return cachedValue.getValue();
+        }
+        return (ItemDTO) cached;
     }
 
     /**
-     * 释放锁
-     * @param key
+     * 提交异步刷新任务，同一商品同时只有一个刷新任务
+     * @param id
      */
-    // 释放锁
-    private void unLock(String key){
-        redisTemplate.delete(key);
+    private void refreshAsync(Long id) {
+        if (!refreshingIds.add(id)) {
+            return;
+        }
+        try {
+            cacheRefreshExecutor.execute(() -> {
+                try {
+                    refreshItem(id);
+                } catch (Exception e) {
+                    log.error("商品缓存刷新失败，id：{}", id, e);
+                } finally {
+                    refreshingIds.remove(id);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 刷新线程池已满，本次不刷新，由后续请求再次触发
+            refreshingIds.remove(id);
+        }
     }
 
+    /**
+     * 重新加载商品并覆盖缓存，其他节点正在重建时直接跳过
+     * @param id
+     */
+    private void refreshItem(Long id) throws InterruptedException {
+        RLock lock = redissonClient.getLock("lock:item::" + id);
+        if (!lock.tryLock(0, lockLeaseTime, TimeUnit.SECONDS)) {
+            meterRegistry.counter("item.lock.failures", "operation", "refresh").increment();
+            return;
+        }
+        try {
+            Cache itemCache = cacheManager.getCache("item");
+            long start = System.currentTimeMillis();
+            Item item = baseMapper.selectById(id);
+            if (item == null) {
+                itemCache.evict(id);
+                negativeItemCache.addAll(Collections.singletonList(id));
+                return;
+            }
+            ItemDTO itemDTO = itemToItemDTO(item);
+            itemCache.put(id, CachedValue.of(itemDTO, System.currentTimeMillis() - start, exipreTime));
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
 
     @Override
     public List<ItemDTO> queryItemByIds(Collection<Long> ids) {
@@ -157,83 +454,196 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
             return Collections.emptyList();
         }
 
-        // 构造Redis中的key，规则：item_id
-        List<String> keys = ids.stream()
-                .map(id -> "item::" + id)
-                .collect(Collectors.toList());
-        log.info(keys.toString());
+        // 去重，并保持调用方传入的顺序
+        List<Long> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+        batchSizes.record(idList.size());
 
-        // 使用泛型参数 <String, ItemDTO> 来确保类型安全
-        ValueOperations<String, ItemDTO> valueOps = redisTemplate.opsForValue();
-        List<ItemDTO> itemDTOs = valueOps.multiGet(keys);
+        // 热点商品直接从常驻内存返回，其余的批量查询缓存
+        Map<Long, ItemDTO> itemDTOMap = new HashMap<>();
+        Set<Long> hotIds = new HashSet<>();
+        List<Long> fetchIds = new ArrayList<>();
+        for (Long id : idList) {
+            if (hotItemCache.record(id)) {
+                hotIds.add(id);
+                ItemDTO pinned = hotItemCache.get(id);
+                if (pinned != null) {
+                    itemDTOMap.put(id, pinned);
+                    continue;
+                }
+            }
+            fetchIds.add(id);
+        }
+        if (!fetchIds.isEmpty()) {
+            fetchItems(fetchIds).forEach((id, itemDTO) -> {
+                if (hotIds.contains(id)) {
+                    hotItemCache.pin(id, itemDTO);
+                }
+                itemDTOMap.put(id, itemDTO);
+            });
+        }
 
-        if (itemDTOs != null && !itemDTOs.isEmpty()) {
-            log.info("从Redis中获取商品信息");
+        // 按调用方传入的顺序返回，不存在的商品不返回，库存与单个查询一样取计数
+        Map<Long, Integer> stocks = stockCounter.peekAll(itemDTOMap.keySet());
+        return idList.stream()
+                .map(id -> withStock(itemDTOMap.get(id), stocks.get(id)))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
 
-            // 过滤掉为null的元素
-            List<ItemDTO> filteredItemDTOs = itemDTOs.stream()
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+    /**
+     * 定时从缓存重新读取常驻内存的热点商品，缓存已失效的从数据库加载
+     * 刷新间隔即热点商品在其他节点更新后最长的不一致时间（失效通知丢失时）
+     */
+    @Scheduled(fixedDelayString = "${byte.hot-key.refresh-interval-ms:1000}")
+    public void refreshHotItems() {
+        List<Long> hotIds = hotItemCache.hotIds();
+        if (hotIds.isEmpty()) {
+            return;
+        }
+        Map<Long, ItemDTO> itemDTOMap = fetchItems(hotIds);
+        for (Long id : hotIds) {
+            ItemDTO itemDTO = itemDTOMap.get(id);
+            if (itemDTO != null) {
+                hotItemCache.pin(id, itemDTO);
+            } else {
+                hotItemCache.invalidate(id);
+            }
+        }
+    }
 
-            // 检查是否有缺失的商品信息
-            List<Long> missingIds = IntStream.range(0, keys.size())
-                    .filter(i -> itemDTOs.get(i) == null)
-                    .mapToObj(i -> Long.parseLong(keys.get(i).split("::")[1]))
-                    .collect(Collectors.toList());
+    /**
+     * 一次multiGet批量查询缓存，未命中的从数据库批量加载并回填
+     * @param idList 已去重的商品id
+     * @return 商品id到商品信息的映射，不存在的商品不返回
+     */
+    private Map<Long, ItemDTO> fetchItems(List<Long> ids) {
+        return fetchItems(ids, null);
+    }
 
-            if (!missingIds.isEmpty()) {
-                // 从数据库中获取缺失的商品信息
-                List<Item> missingItems = baseMapper.selectBatchIds(missingIds);
-                if (missingItems != null && !missingItems.isEmpty()) {
-                    List<ItemDTO> missingItemDTOs = missingItems.stream()
-                            .map(this::itemToItemDTO)
-                            .collect(Collectors.toList());
-
-                    // 更新Redis缓存并设置过期时间
-                    for (int i = 0; i < missingIds.size(); i++) {
-                        String key = "item::" + missingIds.get(i);
-                        ItemDTO itemDTO = missingItemDTOs.get(i);
-                        // 设置过期时间为1小时（3600000毫秒）
-                        valueOps.set(key, itemDTO, exipreTime, TimeUnit.MILLISECONDS);
-                    }
+    /**
+     * @param localCache 不为null时为合并后的单个查询：命中的原始缓存值回填L1，
+     *                   未命中的整批经过SingleFlight一次从数据库加载，写入Redis的缓存值同时回填L1
+     */
+    private Map<Long, ItemDTO> fetchItems(List<Long> ids, TwoLevelCache localCache) {
+        // 布隆过滤器拦截的和本地空值缓存中的id直接跳过
+        List<Long> idList = ids.stream()
+                .filter(id -> itemBloomFilter.mightContain(id) && !negativeItemCache.containsLocal(id))
+                .collect(Collectors.toList());
+        if (idList.isEmpty()) {
+            return new HashMap<>();
+        }
+        // 构造Redis中的key，规则：item::id
+        List<String> keys = idList.stream()
+                .map(id -> "item::" + id)
+                .collect(Collectors.toList());
+
+        ValueOperations<String, Object> valueOps = redisTemplate.opsForValue();
+        List<Object> cachedValues = valueOps.multiGet(keys);
 
-                    // 将缺失的商品信息添加到结果列表中
-                    filteredItemDTOs.addAll(missingItemDTOs);
+        Map<Long, ItemDTO> itemDTOMap = new HashMap<>();
+        List<Long> missingIds = new ArrayList<>();
+        for (int i = 0; i < idList.size(); i++) {
+            Long id = idList.get(i);
+            Object cached = cachedValues == null ? null : cachedValues.get(i);
+            if (cached == null) {
+                missingIds.add(id);
+                continue;
+            }
+            // 旧版本写入的空值缓存表示商品不存在，直接跳过
+            ItemDTO itemDTO = unwrap(id, cached);
+            if (itemDTO != null) {
+                itemDTOMap.put(id, itemDTO);
+                if (localCache != null) {
+                    localCache.putLocal(id, cached);
                 }
             }
+        }
+        Cache itemCache = localCache != null ? localCache : cacheManager.getCache("item");
+        if (itemCache instanceof TwoLevelCache) {
+            ((TwoLevelCache) itemCache).recordRemote(idList.size() - missingIds.size(), missingIds.size());
+        }
 
-            return filteredItemDTOs;
-        } else {
-            // 如果Redis中没有任何数据，则直接从数据库中获取
-            List<Item> items = baseMapper.selectBatchIds(ids);
-            if (items == null || items.isEmpty()) {
-                log.error("商品不存在");
-                return Collections.emptyList();
-            }
+        // 一次查询Redis中的空值缓存，确认不存在的不再查询数据库
+        missingIds.removeAll(negativeItemCache.containsRemote(missingIds));
+        batchMisses.record(missingIds.size());
+        if (missingIds.isEmpty()) {
+            return itemDTOMap;
+        }
+        log.info("从数据库中获取缺失的商品信息，数量：{}", missingIds.size());
+        if (localCache == null) {
+            itemDTOMap.putAll(loadAndCacheItems(missingIds, null));
+            return itemDTOMap;
+        }
+        Collections.sort(missingIds);
+        itemDTOMap.putAll(batchLoadFlight.execute(missingIds, () -> loadAndCacheItems(missingIds, localCache)));
+        return itemDTOMap;
+    }
 
-            List<ItemDTO> itemDTOList = items.stream()
-                    .map(this::itemToItemDTO)
-                    .collect(Collectors.toList());
+    /**
+     * 从数据库批量加载商品，并通过一次pipeline回填缓存
+     * 不存在的id删除商品缓存并写入空值缓存，防止重复穿透到数据库
+     * @param ids
+     * @param localCache 不为null时写入Redis的缓存值同时回填本节点的L1
+     * @return 商品id到商品信息的映射
+     */
+    private Map<Long, ItemDTO> loadAndCacheItems(List<Long> ids, TwoLevelCache localCache) {
+        long start = System.currentTimeMillis();
+        List<Item> items = baseMapper.selectBatchIds(ids);
+        // selectBatchIds不保证顺序，也不会返回不存在的id，按id重新对应
+        Map<Long, ItemDTO> itemDTOMap = itemsToItemDTOs(items).stream()
+                .collect(Collectors.toMap(ItemDTO::getId, Function.identity()));
+        long delta = System.currentTimeMillis() - start;
+        Map<Long, CachedValue<ItemDTO>> cachedValues = new HashMap<>();
+        itemDTOMap.forEach((id, itemDTO) -> cachedValues.put(id, CachedValue.of(itemDTO, delta, exipreTime)));
 
-            // 更新Redis缓存并设置过期时间
-            for (int i = 0; i < keys.size(); i++) {
-                String key = keys.get(i);
-                ItemDTO itemDTO = itemDTOList.get(i);
-                // 设置过期时间为1小时（3600000毫秒）
-                valueOps.set(key, itemDTO, exipreTime, TimeUnit.MILLISECONDS);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                ValueOperations<String, Object> ops = (ValueOperations<String, Object>) operations.opsForValue();
+                for (Long id : ids) {
+                    CachedValue<ItemDTO> cachedValue = cachedValues.get(id);
+                    if (cachedValue != null) {
+                        ops.set("item::" + id, cachedValue, jitter(exipreTime), TimeUnit.MILLISECONDS);
+                    } else {
+                        // 商品已删除时清理原来的缓存
+                        ((RedisOperations<String, Object>) operations).delete("item::" + id);
+                    }
+                }
+                return null;
             }
-
-            return itemDTOList;
+        });
+        if (localCache != null) {
+            cachedValues.forEach(localCache::putLocal);
         }
+        List<Long> absentIds = ids.stream()
+                .filter(id -> !itemDTOMap.containsKey(id))
+                .collect(Collectors.toList());
+        negativeItemCache.addAll(absentIds);
+        return itemDTOMap;
+    }
+
+    /**
+     * 在过期时间上增加最多10%的随机值，避免同一批写入的缓存同时过期
+     * @param expireTime
+     * @return
+     */
+    private long jitter(long expireTime) {
+        return expireTime + ThreadLocalRandom.current().nextLong(expireTime / 10 + 1);
     }
 
     @Override
     public List<ItemDTO> queryItemByName(String name) {
         // 判断name是否为空
         if (name != null) {
+            if (itemNameIndex.isReady()) {
+                // 使用内存倒排索引查询id，按相关度、销量排序
+                List<Long> itemIds = itemNameIndex.search(name, searchMaxResults);
+                return this.queryItemByIds(itemIds);
+            }
             //原来使用模糊匹配，不能使用索引，效率不高
 //            List<Item> items = baseMapper.selectList(new QueryWrapper<Item>().like("name", '%' + name + '%'));
-            //判断name是否以"开头，如果不是，则添加双引号，不然全文索引会报错
+            //判断name是否以"开头，如果不是，则添加双引号，以布尔模式全文检索按短语匹配
             if(!name.startsWith("\"")){
                 name="\""+name+"\"";
             }
@@ -251,10 +661,33 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
 
     @Override
     public Page<ItemDTO> pageQuery(int page, int pageSize, String categoryName) {
-        if (categoryName != null && !categoryName.isEmpty()) {
-            // 查询类别ID
-            List<Long> itemIds = categoryMapper.selectList(new QueryWrapper<Category>().eq("name", categoryName))
-                    .stream().map(Category::getItemId).collect(Collectors.toList());
+        if (pageSize < 1) {
+            ApiAsserts.fail("pageSize必须大于0");
+        }
+        // 多个类别用逗号分隔时取交集，索引和数据库两条路径使用同样的拆分结果
+        List<String> categoryNames = splitCategoryNames(categoryName);
+        if (!categoryNames.isEmpty() && categoryIndex.isReady()) {
+            // 从内存类别索引中分页
+            long total = categoryIndex.count(categoryNames);
+            long current = page < 1 ? 1 : page;
+            if ((current - 1) * pageSize >= total) {
+                // 与分页插件的overflow配置保持一致，超出最后一页时返回第一页
+                current = 1;
+            }
+            List<Long> itemIds = categoryIndex.page(categoryNames, (current - 1) * pageSize, pageSize);
+
+            Page<ItemDTO> itemDTOPage = new Page<>(current, pageSize, total);
+            itemDTOPage.setRecords(itemsToItemDTOs(selectItemsInOrder(itemIds)));
+            return itemDTOPage;
+        } else if (!categoryNames.isEmpty()) {
+            // 查询类别ID，只保留属于全部类别的商品
+            Map<Long, Set<String>> namesByItem = categoryMapper.selectList(new QueryWrapper<Category>().in("name", categoryNames))
+                    .stream().collect(Collectors.groupingBy(Category::getItemId,
+                            Collectors.mapping(Category::getName, Collectors.toSet())));
+            List<Long> itemIds = namesByItem.entrySet().stream()
+                    .filter(entry -> entry.getValue().size() == categoryNames.size())
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
 
             if (itemIds.isEmpty()) {
                 log.error("类别不存在");
@@ -269,9 +702,7 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
                     .in("id", itemIds));
 
             // 转换为ItemDTO列表
-            List<ItemDTO> itemDTOList = itemIPage.getRecords().stream()
-                    .map(this::itemToItemDTO)
-                    .collect(Collectors.toList());
+            List<ItemDTO> itemDTOList = itemsToItemDTOs(itemIPage.getRecords());
 
             // 返回分页结果
             Page<ItemDTO> itemDTOPage = new Page<>();
@@ -291,9 +722,7 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
             IPage<Item> itemIPage = baseMapper.selectPage(itemPage, new QueryWrapper<Item>());
 
             // 转换为ItemDTO列表
-            List<ItemDTO> itemDTOList = itemIPage.getRecords().stream()
-                    .map(this::itemToItemDTO)
-                    .collect(Collectors.toList());
+            List<ItemDTO> itemDTOList = itemsToItemDTOs(itemIPage.getRecords());
 
             // 返回分页结果
             Page<ItemDTO> itemDTOPage = new Page<>();
@@ -308,6 +737,143 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
     }
 
     @Override
+    public CursorPageDTO<ItemDTO> scrollQuery(String after, int pageSize, String categoryName, String sort, boolean withTotal) {
+        if (pageSize <= 0) {
+            ApiAsserts.fail("pageSize必须大于0");
+        }
+        pageSize = Math.min(pageSize, maxPageSize);
+        if (categoryName != null && categoryName.isEmpty()) {
+            categoryName = null;
+        }
+        if (!SORT_BY_ID.equals(sort) && !SORT_BY_SOLD.equals(sort)) {
+            ApiAsserts.fail("不支持的排序方式：" + sort);
+        }
+        boolean sortBySold = SORT_BY_SOLD.equals(sort);
+        String[] cursor = decodeCursor(after, sortBySold ? SORT_BY_SOLD : SORT_BY_ID);
+
+        // 多查一条用于判断是否还有下一页
+        List<Item> items;
+        if (!sortBySold && categoryName != null && categoryIndex.isReady()) {
+            // 按id排序的类别浏览直接从内存类别索引中取下一页的id
+            List<Long> itemIds = categoryIndex.after(Collections.singletonList(categoryName),
+                    cursor == null ? 0L : Long.parseLong(cursor[1]),
+                    pageSize + 1);
+            items = selectItemsInOrder(itemIds);
+        } else if (sortBySold) {
+            items = itemMapper.selectPageBySold(categoryName,
+                    cursor == null ? null : Integer.valueOf(cursor[1]),
+                    cursor == null ? null : Long.valueOf(cursor[2]),
+                    pageSize + 1);
+        } else {
+            items = itemMapper.selectPageAfterId(categoryName,
+                    cursor == null ? null : Long.valueOf(cursor[1]),
+                    pageSize + 1);
+        }
+
+        boolean hasMore = items.size() > pageSize;
+        if (hasMore) {
+            items = items.subList(0, pageSize);
+        }
+        String next = null;
+        if (hasMore) {
+            Item last = items.get(items.size() - 1);
+            next = sortBySold
+                    ? encodeCursor(SORT_BY_SOLD, String.valueOf(last.getSold()), String.valueOf(last.getId()))
+                    : encodeCursor(SORT_BY_ID, String.valueOf(last.getId()));
+        }
+
+        CursorPageDTO<ItemDTO> cursorPage = new CursorPageDTO<ItemDTO>()
+                .setRecords(itemsToItemDTOs(items))
+                .setNext(next)
+                .setHasMore(hasMore);
+        if (withTotal) {
+            // 总数需要额外的COUNT查询，只在调用方明确需要时才统计；类别索引就绪时直接从索引计数
+            long total;
+            if (categoryName != null && categoryIndex.isReady()) {
+                total = categoryIndex.count(Collections.singletonList(categoryName));
+            } else if (categoryName != null) {
+                total = categoryMapper.selectCount(new QueryWrapper<Category>().eq("name", categoryName));
+            } else {
+                total = baseMapper.selectCount(null);
+            }
+            cursorPage.setTotal(total);
+        }
+        return cursorPage;
+    }
+
+    /**
+     * 拆分逗号分隔的类别名称，去掉空白和重复的名称
+     * @param categoryName 类别名称，为空时返回空列表
+     * @return
+     */
+    private List<String> splitCategoryNames(String categoryName) {
+        if (categoryName == null || categoryName.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return Arrays.stream(categoryName.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 按给定id的顺序批量查询商品，不存在的id会被跳过
+     * @param ids
+     * @return
+     */
+    private List<Item> selectItemsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Item> itemMap = baseMapper.selectBatchIds(ids).stream()
+                .collect(Collectors.toMap(Item::getId, Function.identity()));
+        return ids.stream()
+                .map(itemMap::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 生成不透明的游标，格式为 排序方式:排序字段值...:id 的Base64编码
+     * @param parts
+     * @return
+     */
+    private String encodeCursor(String... parts) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.join(":", parts).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标
+     * @param cursor 游标，为空时返回null
+     * @param sort   当前的排序方式，与游标不一致时视为非法游标
+     * @return
+     */
+    private String[] decodeCursor(String cursor, String sort) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            int expectedLength = SORT_BY_SOLD.equals(sort) ? 3 : 2;
+            if (parts.length == expectedLength && sort.equals(parts[0])) {
+                // 销量为int，id为long，游标由客户端传入，解析失败时视为非法游标
+                if (SORT_BY_SOLD.equals(sort)) {
+                    Integer.parseInt(parts[1]);
+                }
+                Long.parseLong(parts[parts.length - 1]);
+                return parts;
+            }
+        } catch (IllegalArgumentException e) {
+            log.error("游标解析失败：{}", cursor);
+        }
+        ApiAsserts.fail("游标无效");
+        return null;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
     public Long createItem(ItemDTO itemDTO) {
         Item item = Item.builder()
                 .name(itemDTO.getName())
@@ -320,14 +886,18 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
         boolean saved = save(item);
         if (saved) {
             log.info("商品插入成功");
-            redisTemplate.opsForValue().set("item::" + item.getId(), itemDTO, exipreTime, TimeUnit.MILLISECONDS);
-            for (String categoryName : itemDTO.getCategory()) {
-                Category category = Category.builder()
-                        .name(categoryName)
-                        .itemId(item.getId())
-                        .build();
-                categoryMapper.insert(category);
+            // 布隆过滤器只增不减，事务回滚时多出的id只会多放行一次查询，先写入避免中继同步前新商品被拦截
+            itemBloomFilter.add(item.getId());
+            if (itemDTO.getCategory() != null && !itemDTO.getCategory().isEmpty()) {
+                // 所有类别一条语句插入
+                categoryMapper.insertBatch(itemDTO.getCategory().stream()
+                        .map(categoryName -> Category.builder()
+                                .name(categoryName)
+                                .itemId(item.getId())
+                                .build())
+                        .collect(Collectors.toList()));
             }
+            recordChanges(Collections.singletonList(item.getId()));
             return item.getId();
         } else {
             log.error("商品插入失败");
@@ -336,11 +906,138 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
     }
 
     @Override
+    public ItemImportResultDTO importItems(InputStream in, ItemRecordReader.Format format) {
+        ItemImportResultDTO result = new ItemImportResultDTO();
+        List<ItemRecordReader.Record> chunk = new ArrayList<>(importChunkSize);
+        long start = System.currentTimeMillis();
+        try (ItemRecordReader reader = new ItemRecordReader(in, format)) {
+            ItemRecordReader.Record record;
+            while ((record = reader.next()) != null) {
+                result.setTotal(result.getTotal() + 1);
+                String error = record.getError() != null ? record.getError() : validateImportItem(record.getItem());
+                if (error != null) {
+                    addImportFailure(result, record.getLine(), error);
+                    continue;
+                }
+                chunk.add(record);
+                if (chunk.size() >= importChunkSize) {
+                    importChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, result);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取导入数据失败", e);
+        }
+        log.info("批量导入商品完成，共{}行，成功{}行，失败{}行，耗时{}ms",
+                result.getTotal(), result.getSucceeded(), result.getFailed(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * 在一个事务中导入一块数据，失败时逐行重试以找出失败的行
+     * @param chunk
+     * @param result
+     */
+    private void importChunk(List<ItemRecordReader.Record> chunk, ItemImportResultDTO result) {
+        try {
+            List<Item> items = transactionTemplate.execute(status -> insertImportRecords(chunk));
+            afterImport(items);
+            result.setSucceeded(result.getSucceeded() + chunk.size());
+            return;
+        } catch (Exception e) {
+            log.warn("批量导入第{}行起的{}行失败，逐行重试", chunk.get(0).getLine(), chunk.size(), e);
+        }
+        for (ItemRecordReader.Record record : chunk) {
+            List<ItemRecordReader.Record> single = Collections.singletonList(record);
+            try {
+                List<Item> items = transactionTemplate.execute(status -> insertImportRecords(single));
+                afterImport(items);
+                result.setSucceeded(result.getSucceeded() + 1);
+            } catch (Exception e) {
+                addImportFailure(result, record.getLine(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 多行插入商品，再用回填的id多行插入类别并写入变更事件，调用方负责事务
+     * @param records
+     * @return 插入的商品，id已回填
+     */
+    private List<Item> insertImportRecords(List<ItemRecordReader.Record> records) {
+        List<Item> items = new ArrayList<>(records.size());
+        for (ItemRecordReader.Record record : records) {
+            ItemDTO itemDTO = record.getItem();
+            items.add(Item.builder()
+                    .name(itemDTO.getName())
+                    .price(itemDTO.getPrice())
+                    .image(itemDTO.getImage())
+                    .brand(itemDTO.getBrand())
+                    .stock(itemDTO.getStock())
+                    .description(itemDTO.getDescription())
+                    .build());
+        }
+        itemMapper.insertBatch(items);
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            List<String> categoryNames = records.get(i).getItem().getCategory();
+            if (categoryNames == null) {
+                continue;
+            }
+            for (String categoryName : categoryNames) {
+                categories.add(Category.builder()
+                        .name(categoryName)
+                        .itemId(items.get(i).getId())
+                        .build());
+            }
+        }
+        if (!categories.isEmpty()) {
+            categoryMapper.insertBatch(categories);
+        }
+        recordChanges(items.stream().map(Item::getId).collect(Collectors.toList()));
+        return items;
+    }
+
+    /**
+     * 事务提交后立即写入布隆过滤器，缓存和内存索引由发件箱中继同步
+     * @param items
+     */
+    private void afterImport(List<Item> items) {
+        itemBloomFilter.addAll(items.stream().map(Item::getId).collect(Collectors.toList()));
+    }
+
+    private String validateImportItem(ItemDTO itemDTO) {
+        if (itemDTO == null) {
+            return "记录为空";
+        }
+        if (itemDTO.getName() == null || itemDTO.getName().trim().isEmpty()) {
+            return "商品名称不能为空";
+        }
+        if (itemDTO.getPrice() == null || itemDTO.getPrice() < 0) {
+            return "商品价格不合法";
+        }
+        if (itemDTO.getStock() != null && itemDTO.getStock() < 0) {
+            return "商品库存不合法";
+        }
+        return null;
+    }
+
+    private void addImportFailure(ItemImportResultDTO result, long line, String reason) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getFailures().size() < importMaxReportedFailures) {
+            result.getFailures().add(new ItemImportFailureDTO(line, reason));
+        }
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean updateItem(ItemDTO itemDTO) {
         Long id = itemDTO.getId();
         if (id != null) {
             Item item = baseMapper.selectById(id);
-            redisTemplate.delete("item::" + id);
 
             if (item != null) {
 
@@ -353,20 +1050,29 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
                 item.setPrice(itemDTO.getPrice());
                 item.setImage(itemDTO.getImage());
                 item.setBrand(itemDTO.getBrand());
-                item.setStock(itemDTO.getStock());
                 item.setDescription(itemDTO.getDescription());
                 item.setUpdateTime(LocalDateTime.now());
+                // 库存和销量只通过增量累加，不随商品信息整行覆盖
+                item.setStock(null);
+                item.setSold(null);
 
                 // 更新商品对应的类别
-                for (String categoryName : itemDTO.getCategory()) {
-                    Category category = Category.builder()
-                            .name(categoryName)
-                            .itemId(id)
-                            .build();
-                    categoryMapper.insert(category);
+                if (itemDTO.getCategory() != null && !itemDTO.getCategory().isEmpty()) {
+                    // 所有类别一条语句插入
+                    categoryMapper.insertBatch(itemDTO.getCategory().stream()
+                            .map(categoryName -> Category.builder()
+                                    .name(categoryName)
+                                    .itemId(id)
+                                    .build())
+                            .collect(Collectors.toList()));
+                }
+                boolean updated = updateById(item);
+                // 缓存、本地缓存和内存索引在事务提交后由发件箱中继按数据库中的最新数据同步
+                recordChanges(Collections.singletonList(id));
+                if (itemDTO.getStock() != null) {
+                    adjustStockAfterCommit(id, itemDTO.getStock());
                 }
-                redisTemplate.opsForValue().set("item::" + id, itemDTO, exipreTime, TimeUnit.MILLISECONDS);
-                return updateById(item);
+                return updated;
             }
         } else {
             log.error("商品不存在");
@@ -375,31 +1081,201 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
         return true;
     }
 
-    @CacheEvict(cacheNames = "item", key = "#id")
+    /**
+     * 事务提交后将Redis中的可售库存设置为新值，并把与原计数之差作为增量写回数据库，
+     * 回滚时不做修改；并发的扣减和未释放的预占保留在计数中，数据库与计数的差值不变
+     */
+    private void adjustStockAfterCommit(Long id, int stock) {
+        afterCommit(() -> {
+            int delta = stockCounter.adjust(id, stock);
+            if (delta != 0) {
+                stockWriteBehind.append(Collections.singletonMap(id, delta), Collections.emptyMap());
+            }
+            log.info("商品{}库存调整为{}，增量{}", id, stock, delta);
+        });
+    }
+
+    /**
+     * 事务提交后执行对Redis的修改，回滚时不执行，避免数据库与计数不一致
+     */
+    private void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean deleteItem(Long id) {
         if (id != null) {
             itemMapper.deleteById(id);
             categoryMapper.delete(new QueryWrapper<Category>().eq("item_id", id));
+            recordChanges(Collections.singletonList(id));
+            // 回滚时商品仍存在，保留计数，否则之后会按数据库库存重新加载，丢失尚未写回的增量
+            afterCommit(() -> stockCounter.remove(id));
             return true;
         }
         return false;
     }
 
+    @Override
+    public boolean deductStock(List<OrderDetailDTO> orderDetails) {
+        Map<Long, Integer> lines = mergeOrderDetails(orderDetails);
+
+        // 在Redis中一次性校验并扣减所有商品的库存，下单链路不占用数据库行锁
+        Long insufficientId = stockCounter.deduct(lines);
+        if (insufficientId != null) {
+            log.info("商品{}库存不足，扣减失败", insufficientId);
+            ApiAsserts.fail("商品库存不足：" + insufficientId);
+        }
+
+        // 增量写入本地日志后合并，批量异步写回数据库；写入日志失败时加回计数，避免库存凭空减少
+        try {
+            stockWriteBehind.deduct(lines);
+        } catch (RuntimeException e) {
+            stockCounter.restore(lines);
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean reserveStock(StockReservationDTO reservation) {
+        if (reservation.getToken() == null || reservation.getToken().trim().isEmpty()) {
+            ApiAsserts.fail("订单令牌不能为空");
+        }
+        stockReservation.reserve(reservation.getToken(), mergeOrderDetails(reservation.getOrderDetails()),
+                reservation.getTtlSeconds());
+        return true;
+    }
+
+    @Override
+    public boolean confirmReservation(String token) {
+        stockReservation.confirm(token);
+        return true;
+    }
+
+    @Override
+    public boolean releaseReservation(String token) {
+        return stockReservation.release(token);
+    }
+
+    /**
+     * 校验订单明细，合并同一商品的多行明细，保持下单顺序
+     * @param orderDetails
+     * @return 商品id -> 数量
+     */
+    private Map<Long, Integer> mergeOrderDetails(List<OrderDetailDTO> orderDetails) {
+        if (orderDetails == null || orderDetails.isEmpty()) {
+            ApiAsserts.fail("订单明细不能为空");
+        }
+        Map<Long, Integer> lines = new LinkedHashMap<>();
+        for (OrderDetailDTO orderDetail : orderDetails) {
+            if (orderDetail.getItemId() == null || orderDetail.getNum() == null || orderDetail.getNum() <= 0) {
+                ApiAsserts.fail("订单明细不合法");
+            }
+            lines.merge(orderDetail.getItemId(), orderDetail.getNum(), Integer::sum);
+        }
+        return lines;
+    }
+
+    @Override
+    public int warmUpCache(int topN, int batchSize) {
+        List<Long> ids = itemMapper.selectHotIds(Math.max(topN, topN * warmUpCandidateFactor), topN);
+        int warmed = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            // Redis中已有的直接读取（滚动重启时通常已被其他节点加载），
+            // 缺失的整批经loadAndCacheItems查询数据库和类别，写入Redis后回填L1
+            warmed += fetchItemsToLocal(batch).size();
+        }
+        return warmed;
+    }
+
+    @Override
+    public void syncItemCaches(Collection<Long> ids) {
+        List<Long> idList = new ArrayList<>(ids);
+        // 回填Redis，已删除的商品删除缓存并写入空值缓存
+        Map<Long, ItemDTO> itemDTOMap = loadAndCacheItems(idList, null);
+        itemBloomFilter.addAll(itemDTOMap.keySet());
+        // 新建的商品可能在创建前被查询过，移除空值缓存
+        negativeItemCache.removeAll(itemDTOMap.keySet());
+        // 更新版本号，客户端持有的ETag随之失效
+        List<Long> deletedIds = idList.stream()
+                .filter(id -> !itemDTOMap.containsKey(id))
+                .collect(Collectors.toList());
+        itemVersionCache.update(itemDTOMap.keySet(), deletedIds);
+        // Redis已是最新值，只需清理各节点的本地缓存
+        Cache itemCache = cacheManager.getCache("item");
+        if (itemCache instanceof TwoLevelCache) {
+            for (Long id : idList) {
+                ((TwoLevelCache) itemCache).evictAllLocal(id);
+            }
+        }
+        categoryIndex.refreshItems(idList);
+        itemNameIndex.refreshItems(idList);
+    }
+
+    /**
+     * 在当前事务中写入商品变更事件，事务提交后通知中继同步
+     * @param ids
+     */
+    private void recordChanges(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        itemChangeEventMapper.insertBatch(ids);
+        eventPublisher.publishEvent(new ItemChangedEvent(ids));
+    }
+
+    @Override
+    public boolean segmentStock(Long id, int segments) {
+        if (id == null || segments < 1 || segments > maxStockSegments) {
+            ApiAsserts.fail("分段数需在1到" + maxStockSegments + "之间");
+        }
+        stockCounter.reshard(id, segments);
+        return true;
+    }
+
     /**
      * 将商品item转换为ItemDTO
      * @param item
      * @return
      */
     private ItemDTO itemToItemDTO(Item item) {
+        return itemsToItemDTOs(Collections.singletonList(item)).get(0);
+    }
+
+    /**
+     * 批量将商品item转换为ItemDTO，所有商品的类别通过一次查询加载
+     * @param items
+     * @return
+     */
+    private List<ItemDTO> itemsToItemDTOs(List<Item> items) {
+        if (items == null || items.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> itemIds = items.stream().map(Item::getId).collect(Collectors.toList());
+        // 按商品id分组类别名称
+        Map<Long, List<String>> categoryMap = categoryMapper.selectList(new QueryWrapper<Category>().in("item_id", itemIds))
+                .stream()
+                .collect(Collectors.groupingBy(Category::getItemId,
+                        Collectors.mapping(Category::getName, Collectors.toList())));
+        return items.stream()
+                .map(item -> itemToItemDTO(item, categoryMap.getOrDefault(item.getId(), new ArrayList<>())))
+                .collect(Collectors.toList());
+    }
+
+    private ItemDTO itemToItemDTO(Item item, List<String> categoryName) {
         ItemDTO itemDTO = new ItemDTO();
         itemDTO.setId(item.getId());
         itemDTO.setName(item.getName());
         itemDTO.setPrice(item.getPrice());
         itemDTO.setImage(item.getImage());
         itemDTO.setStock(item.getStock());
-        List<Category>category =categoryMapper.selectList(new QueryWrapper<Category>().eq("item_id",item.getId()));
-        List<String> categoryName = category.stream().map(Category::getName).collect(Collectors.toList());
         itemDTO.setCategory(categoryName);
         itemDTO.setBrand(item.getBrand());
         return itemDTO;
@@ -0,0 +1,485 @@
+package com.yccc.bytemall.stock;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yccc.bytemall.common.exception.ApiAsserts;
+import com.yccc.bytemall.entity.po.Item;
+import com.yccc.bytemall.mapper.ItemMapper;
+import com.yccc.bytemall.cache.LocalCache;
+import io.lettuce.core.cluster.SlotHash;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis库存计数器
+ * 每个商品一个计数key，首次扣减时从数据库加载；一个订单的所有商品通过一次Lua脚本原子扣减
+ * 秒杀热点商品可拆分为多个分段计数，每次扣减随机选择一个分段，分段不足时依次尝试其他分段，
+ * 都不足时从其他分段调拨；读取库存时汇总所有分段
+ * 同一商品的计数、分段和分段数key以商品id作为hash tag，落在集群的同一个槽位，单个商品的脚本不会跨槽；
+ * 集群模式下一个订单的商品按槽位分组依次扣减，后面的分组不足时加回前面已扣减的分组
+ */
+@Component
+@Slf4j
+public class StockCounter {
+
+    static final String STOCK_KEY_PREFIX = "stock:item::";
+
+    // 已分段商品的登记，商品id -> 分段数，用于启动加载和定时再平衡，脚本中以各商品自己的分段数key为准
+    static final String SEGMENTS_KEY = "stock:segments";
+
+    // 分段再平衡的锁，同一时刻只有一个节点执行
+    static final String REBALANCE_LOCK_KEY = "lock:stock:rebalance";
+
+    // 库存计数未加载时在本地视图中的占位值
+    private static final int NOT_LOADED = Integer.MIN_VALUE;
+
+    // 分段数变更通知频道，消息为商品id
+    static final String SEGMENTS_TOPIC = "stock:segments:refresh";
+
+    private static final DefaultRedisScript<List<Long>> DEDUCT_SCRIPT = script("lua/deduct_stock.lua", List.class);
+
+    private static final DefaultRedisScript<Long> BORROW_SCRIPT = script("lua/borrow_stock.lua", Long.class);
+
+    private static final DefaultRedisScript<Long> RESHARD_SCRIPT = script("lua/reshard_stock.lua", Long.class);
+
+    private static final DefaultRedisScript<Long> RESTORE_SCRIPT = script("lua/restore_stock.lua", Long.class);
+
+    private static final DefaultRedisScript<List<Long>> ADJUST_SCRIPT = script("lua/adjust_stock.lua", List.class);
+
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = script("lua/load_stock.lua", Long.class);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ItemMapper itemMapper;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    // 本地库存视图的存活时间（毫秒），读接口展示的库存最多滞后这么久，扣减始终以Redis为准
+    @Value("${byte.stock.local-view.expire-ms:500}")
+    private long localViewExpireMillis;
+
+    // 本地库存视图最多缓存的商品数量
+    @Value("${byte.stock.local-view.maximum-size:100000}")
+    private int localViewMaximumSize;
+
+    // 商品id -> 最近读取的库存计数，供商品详情等读接口使用，避免每次读取都访问Redis
+    private LocalCache<Long, Integer> localView;
+
+    // Redis是否为集群模式，集群模式下多个商品的扣减按槽位分组
+    private boolean cluster;
+
+    // 本节点缓存的分段数
+    private final Map<Long, Integer> segmentCounts = new ConcurrentHashMap<>();
+
+    private RTopic segmentsTopic;
+
+    @PostConstruct
+    public void init() {
+        localView = new LocalCache<>(localViewMaximumSize, localViewExpireMillis, TimeUnit.MILLISECONDS);
+        cluster = stringRedisTemplate.getConnectionFactory() instanceof LettuceConnectionFactory
+                && ((LettuceConnectionFactory) stringRedisTemplate.getConnectionFactory()).isClusterAware();
+        segmentsTopic = redissonClient.getTopic(SEGMENTS_TOPIC, LongCodec.INSTANCE);
+        segmentsTopic.addListener(Long.class, (channel, itemId) -> reloadSegmentCount(itemId));
+        stringRedisTemplate.<String, String>opsForHash().entries(SEGMENTS_KEY)
+                .forEach((itemId, segments) -> segmentCounts.put(Long.valueOf(itemId), Integer.valueOf(segments)));
+    }
+
+    /**
+     * 原子扣减多个商品的库存，全部成功或全部不扣
+     *
+     * @param lines 商品id -> 扣减数量，同一商品需提前合并
+     * @return 库存不足的商品id，全部扣减成功时返回null
+     */
+    public Long deduct(Map<Long, Integer> lines) {
+        lines.keySet().forEach(localView::invalidate);
+        List<Map<Long, Integer>> groups = slotGroups(lines);
+        for (int i = 0; i < groups.size(); i++) {
+            Long insufficientId = deductGroup(groups.get(i));
+            if (insufficientId != null) {
+                for (int j = 0; j < i; j++) {
+                    restore(groups.get(j));
+                }
+                return insufficientId;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一次脚本原子扣减同一槽位（非集群模式下为全部）商品的库存
+     */
+    private Long deductGroup(Map<Long, Integer> lines) {
+        List<Long> itemIds = new ArrayList<>(lines.keySet());
+        Object[] nums = itemIds.stream().map(id -> String.valueOf(lines.get(id))).toArray();
+        int size = itemIds.size();
+        // 每个商品当前使用的分段及已尝试的分段数，分段起点随机以分散热点
+        int[] segments = new int[size];
+        int[] starts = new int[size];
+        int[] tries = new int[size];
+        boolean[] borrowed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = segmentCount(itemIds.get(i));
+            starts[i] = segments[i] > 1 ? ThreadLocalRandom.current().nextInt(segments[i]) : 0;
+        }
+
+        boolean loaded = false;
+        while (true) {
+            List<String> keys = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                keys.add(segments[i] > 1
+                        ? segmentKey(itemIds.get(i), (starts[i] + tries[i]) % segments[i])
+                        : key(itemIds.get(i)));
+            }
+            List<Long> result = stringRedisTemplate.execute(DEDUCT_SCRIPT, keys, nums);
+            long code = result.get(0);
+            int index = result.get(1).intValue() - 1;
+            if (code == 1) {
+                return null;
+            }
+            if (code == 0) {
+                Long itemId = itemIds.get(index);
+                if (segments[index] <= 1) {
+                    return itemId;
+                }
+                if (tries[index] < segments[index] - 1) {
+                    // 当前分段不足，换下一个分段
+                    tries[index]++;
+                    continue;
+                }
+                if (borrowed[index]) {
+                    return itemId;
+                }
+                // 单个分段都不足，从其他分段调拨到当前分段，合计也不足时才是库存不足
+                borrowed[index] = true;
+                if (!borrow(itemId, segments[index], (starts[index] + tries[index]) % segments[index], lines.get(itemId))) {
+                    return itemId;
+                }
+                continue;
+            }
+            // 库存计数未加载，或本节点缓存的分段数已过期
+            if (loaded) {
+                throw new IllegalStateException("库存计数加载失败：" + itemIds);
+            }
+            loaded = true;
+            load(itemIds);
+            for (int i = 0; i < size; i++) {
+                int count = segmentCount(itemIds.get(i));
+                if (count != segments[i]) {
+                    segments[i] = count;
+                    starts[i] = count > 1 ? ThreadLocalRandom.current().nextInt(count) : 0;
+                    tries[i] = 0;
+                    borrowed[i] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * 将库存加回计数，用于释放未成交的预占；已分段的商品随机加回一个分段
+     *
+     * @param lines 商品id -> 数量
+     */
+    public void restore(Map<Long, Integer> lines) {
+        lines.keySet().forEach(localView::invalidate);
+        for (Map<Long, Integer> group : slotGroups(lines)) {
+            List<String> keys = new ArrayList<>(group.size());
+            List<String> nums = new ArrayList<>(group.size());
+            group.forEach((itemId, num) -> {
+                int segments = segmentCount(itemId);
+                keys.add(segments > 1 ? segmentKey(itemId, ThreadLocalRandom.current().nextInt(segments)) : key(itemId));
+                nums.add(String.valueOf(num));
+            });
+            stringRedisTemplate.execute(RESTORE_SCRIPT, keys, nums.toArray());
+        }
+    }
+
+    /**
+     * 从数据库加载库存计数，已存在的计数不覆盖
+     * 已分段的商品只刷新本节点缓存的分段数，不从数据库加载；是否分段在写入脚本中原子地判断
+     */
+    public void load(Collection<Long> itemIds) {
+        List<Long> unsegmented = new ArrayList<>();
+        for (Long itemId : itemIds) {
+            if (reloadSegmentCount(itemId) <= 1) {
+                unsegmented.add(itemId);
+            }
+        }
+        if (unsegmented.isEmpty()) {
+            return;
+        }
+        List<Item> items = itemMapper.selectList(new QueryWrapper<Item>()
+                .select("id", "stock")
+                .in("id", unsegmented));
+        Set<Long> found = new HashSet<>();
+        for (Item item : items) {
+            found.add(item.getId());
+            int stock = item.getStock() == null ? 0 : item.getStock();
+            // 读取分段数之后可能已被其他节点分段，由脚本再次判断，不在分段计数旁写回单个计数
+            Long loaded = stringRedisTemplate.execute(LOAD_SCRIPT,
+                    Arrays.asList(segmentsKey(item.getId()), key(item.getId())), String.valueOf(stock));
+            if (loaded != null && loaded == 0) {
+                reloadSegmentCount(item.getId());
+            }
+        }
+        for (Long itemId : unsegmented) {
+            if (!found.contains(itemId)) {
+                ApiAsserts.fail("商品不存在：" + itemId);
+            }
+        }
+    }
+
+    /**
+     * 将商品的库存重新划分为segments个分段，为1时合并为单个计数
+     * 库存在Lua脚本中原子地汇总后平均分配，并同时更新分段数
+     */
+    public void reshard(Long itemId, int segments) {
+        load(Collections.singletonList(itemId));
+        int current = reloadSegmentCount(itemId);
+        List<String> keys = new ArrayList<>();
+        keys.add(segmentsKey(itemId));
+        keys.addAll(keys(itemId, current));
+        keys.addAll(keys(itemId, segments));
+        localView.invalidate(itemId);
+        Long total = stringRedisTemplate.execute(RESHARD_SCRIPT, keys,
+                String.valueOf(current), String.valueOf(segments));
+        if (total == null || total == -1) {
+            throw new IllegalStateException("商品库存计数不存在，无法分段：" + itemId);
+        }
+        if (total == -2) {
+            ApiAsserts.fail("商品库存分段正在被其他请求调整，请稍后重试");
+        }
+        if (segments > 1) {
+            stringRedisTemplate.opsForHash().put(SEGMENTS_KEY, String.valueOf(itemId), String.valueOf(segments));
+        } else {
+            stringRedisTemplate.opsForHash().delete(SEGMENTS_KEY, String.valueOf(itemId));
+        }
+        segmentsTopic.publish(itemId);
+        log.info("商品{}库存由{}个分段调整为{}个分段，总库存{}", itemId, current, segments, total);
+    }
+
+    /**
+     * 定时将分段商品的库存重新平均分配，避免扣减集中后部分分段长期为0
+     */
+    @Scheduled(fixedDelayString = "${byte.stock.segment.rebalance-interval-ms:5000}")
+    public void rebalance() {
+        RLock lock = redissonClient.getLock(REBALANCE_LOCK_KEY);
+        // 其他节点正在再平衡时跳过
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            Map<String, String> registered = stringRedisTemplate.<String, String>opsForHash().entries(SEGMENTS_KEY);
+            for (Map.Entry<String, String> entry : registered.entrySet()) {
+                Long itemId = Long.valueOf(entry.getKey());
+                int segments = Integer.parseInt(entry.getValue());
+                List<String> keys = new ArrayList<>();
+                keys.add(segmentsKey(itemId));
+                keys.addAll(keys(itemId, segments));
+                keys.addAll(keys(itemId, segments));
+                try {
+                    stringRedisTemplate.execute(RESHARD_SCRIPT, keys,
+                            String.valueOf(segments), String.valueOf(segments));
+                } catch (Exception e) {
+                    log.error("商品{}库存分段再平衡失败", itemId, e);
+                }
+            }
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 商品库存被直接修改后，将可售库存设置为目标值，返回与原计数之差，由调用方以增量写回数据库
+     * 汇总和重新分配在同一个Lua脚本中完成，并发的扣减和未释放的预占不会被覆盖
+     */
+    public int adjust(Long itemId, int stock) {
+        load(Collections.singletonList(itemId));
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int segments = attempt == 0 ? segmentCount(itemId) : reloadSegmentCount(itemId);
+            List<String> keys = new ArrayList<>();
+            keys.add(segmentsKey(itemId));
+            keys.addAll(keys(itemId, segments));
+            localView.invalidate(itemId);
+            List<Long> result = stringRedisTemplate.execute(ADJUST_SCRIPT, keys,
+                    String.valueOf(segments), String.valueOf(stock));
+            long code = result.get(0);
+            if (code == 1) {
+                return result.get(1).intValue();
+            }
+            if (code == -1) {
+                throw new IllegalStateException("商品库存计数不存在，无法调整：" + itemId);
+            }
+        }
+        throw new IllegalStateException("商品库存分段正在被调整，库存调整失败：" + itemId);
+    }
+
+    public void remove(Long itemId) {
+        int segments = reloadSegmentCount(itemId);
+        stringRedisTemplate.opsForHash().delete(SEGMENTS_KEY, String.valueOf(itemId));
+        List<String> keys = new ArrayList<>(keys(itemId, segments));
+        keys.add(segmentsKey(itemId));
+        stringRedisTemplate.delete(keys);
+        localView.invalidate(itemId);
+        if (segments > 1) {
+            segmentsTopic.publish(itemId);
+        }
+    }
+
+    /**
+     * 批量查询库存计数，已分段时为所有分段之和，一次multiGet读取所有商品（及其分段）的计数，未加载的商品不返回
+     */
+    public Map<Long, Integer> getAll(Collection<Long> itemIds) {
+        List<String> keys = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>(itemIds.size());
+        for (Long itemId : itemIds) {
+            List<String> itemKeys = keys(itemId, segmentCount(itemId));
+            keys.addAll(itemKeys);
+            counts.add(itemKeys.size());
+        }
+        List<String> stocks = stringRedisTemplate.opsForValue().multiGet(keys);
+        Map<Long, Integer> result = new HashMap<>();
+        if (stocks == null) {
+            return result;
+        }
+        int offset = 0;
+        int i = 0;
+        for (Long itemId : itemIds) {
+            int count = counts.get(i++);
+            for (String stock : stocks.subList(offset, offset + count)) {
+                if (stock != null) {
+                    result.merge(itemId, Integer.parseInt(stock), Integer::sum);
+                }
+            }
+            offset += count;
+        }
+        return result;
+    }
+
+    /**
+     * 读接口使用的库存，优先取本地视图，最多滞后byte.stock.local-view.expire-ms，未加载时返回null
+     */
+    public Integer peek(Long itemId) {
+        return peekAll(Collections.singletonList(itemId)).get(itemId);
+    }
+
+    /**
+     * 批量读取读接口使用的库存，本地视图未命中的商品一次getAll读取，未加载的商品不返回
+     */
+    public Map<Long, Integer> peekAll(Collection<Long> itemIds) {
+        Map<Long, Integer> result = new HashMap<>();
+        List<Long> missingIds = new ArrayList<>();
+        for (Long itemId : itemIds) {
+            Integer stock = localView.get(itemId);
+            if (stock == null) {
+                missingIds.add(itemId);
+            } else if (stock != NOT_LOADED) {
+                result.put(itemId, stock);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return result;
+        }
+        Map<Long, Integer> stocks = getAll(missingIds);
+        for (Long itemId : missingIds) {
+            Integer stock = stocks.get(itemId);
+            localView.put(itemId, stock == null ? NOT_LOADED : stock);
+            if (stock != null) {
+                result.put(itemId, stock);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 本节点缓存的分段数，未分段时为1
+     */
+    public int segmentCount(Long itemId) {
+        return segmentCounts.getOrDefault(itemId, 1);
+    }
+
+    private boolean borrow(Long itemId, int segments, int target, int need) {
+        Long result = stringRedisTemplate.execute(BORROW_SCRIPT, keys(itemId, segments),
+                String.valueOf(target + 1), String.valueOf(need));
+        return result != null && result == 1;
+    }
+
+    private int reloadSegmentCount(Long itemId) {
+        String segments = stringRedisTemplate.opsForValue().get(segmentsKey(itemId));
+        if (segments == null) {
+            segmentCounts.remove(itemId);
+            return 1;
+        }
+        int count = Integer.parseInt(segments);
+        segmentCounts.put(itemId, count);
+        return count;
+    }
+
+    private static List<String> keys(Long itemId, int segments) {
+        if (segments <= 1) {
+            return Collections.singletonList(key(itemId));
+        }
+        List<String> keys = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            keys.add(segmentKey(itemId, i));
+        }
+        return keys;
+    }
+
+    /**
+     * 按商品计数key所在的槽位分组，非集群模式下不拆分
+     */
+    private List<Map<Long, Integer>> slotGroups(Map<Long, Integer> lines) {
+        if (!cluster || lines.size() <= 1) {
+            return Collections.singletonList(lines);
+        }
+        Map<Integer, Map<Long, Integer>> groups = new LinkedHashMap<>();
+        lines.forEach((itemId, num) -> groups
+                .computeIfAbsent(SlotHash.getSlot(key(itemId)), slot -> new LinkedHashMap<>())
+                .put(itemId, num));
+        return new ArrayList<>(groups.values());
+    }
+
+    static String key(Long itemId) {
+        return STOCK_KEY_PREFIX + "{" + itemId + "}";
+    }
+
+    static String segmentKey(Long itemId, int segment) {
+        return key(itemId) + ":" + segment;
+    }
+
+    static String segmentsKey(Long itemId) {
+        return key(itemId) + ":segments";
+    }
+
+    /**
+     * 脚本返回列表时以List.class声明结果类型，元素类型由脚本保证
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> DefaultRedisScript<T> script(String path, Class<? super T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        script.setResultType((Class<T>) resultType);
+        return script;
+    }
+}
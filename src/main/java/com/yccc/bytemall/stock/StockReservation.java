@@ -0,0 +1,229 @@
+package com.yccc.bytemall.stock;
+
+import com.yccc.bytemall.common.exception.ApiAsserts;
+import com.yccc.bytemall.util.TimerWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * 库存预占
+ * 支付期间按订单令牌暂扣Redis库存计数：确认后转为销售（数据库扣减库存、累加销量），释放或过期后加回计数。
+ * 本节点创建的预占由时间轮到期回收；节点宕机遗留的预占由Redis有序集合兜底扫描回收。
+ * 预占明细和到期时间由一个脚本同时写入；确认、释放、回收都通过同一个脚本取出并删除预占，同一预占只会被处理一次
+ */
+@Component
+@Slf4j
+public class StockReservation {
+
+    // 预占key与到期时间使用同一个hash tag，集群模式下脚本访问的key位于同一个slot
+    static final String RESERVATION_KEY_PREFIX = "stock:{reservation}:";
+
+    // 预占到期时间，订单令牌 -> 到期时间戳（毫秒）
+    static final String EXPIRY_KEY = "stock:{reservation}:expiry";
+
+    // 旧版本写入的预占，只在单机Redis上存在（集群模式下旧脚本无法执行），升级后继续确认、释放和回收，直到全部处理完
+    private static final String LEGACY_RESERVATION_KEY_PREFIX = "stock:reservation::";
+
+    private static final String LEGACY_EXPIRY_KEY = "stock:reservation:expiry";
+
+    // 预占key在到期后额外保留的时间，保证兜底扫描回收前不丢失明细
+    private static final long RETENTION_SECONDS = 3600;
+
+    private static final DefaultRedisScript<String> TAKE_SCRIPT = new DefaultRedisScript<>();
+
+    private static final DefaultRedisScript<Long> PUT_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        TAKE_SCRIPT.setLocation(new ClassPathResource("lua/take_reservation.lua"));
+        TAKE_SCRIPT.setResultType(String.class);
+        PUT_SCRIPT.setLocation(new ClassPathResource("lua/put_reservation.lua"));
+        PUT_SCRIPT.setResultType(Long.class);
+    }
+
+    // 预占的默认有效期（秒）
+    @Value("${byte.stock.reservation.default-ttl-seconds:900}")
+    private int defaultTtlSeconds;
+
+    // 预占的最长有效期（秒）
+    @Value("${byte.stock.reservation.max-ttl-seconds:3600}")
+    private int maxTtlSeconds;
+
+    // 时间轮每个tick的时长（毫秒）
+    @Value("${byte.stock.reservation.tick-ms:1000}")
+    private long tickMillis;
+
+    // 时间轮的槽数
+    @Value("${byte.stock.reservation.wheel-size:3600}")
+    private int wheelSize;
+
+    // 兜底扫描每次处理的最大数量
+    @Value("${byte.stock.reservation.sweep-batch-size:1000}")
+    private int sweepBatchSize;
+
+    // 兜底扫描只处理过期超过该时长（毫秒）的预占，其余留给创建节点的时间轮
+    @Value("${byte.stock.reservation.sweep-grace-ms:60000}")
+    private long sweepGraceMillis;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private StockCounter stockCounter;
+
+    @Resource
+    private StockWriteBehind stockWriteBehind;
+
+    private TimerWheel<String> timerWheel;
+
+    @PostConstruct
+    public void init() {
+        timerWheel = new TimerWheel<>(tickMillis, wheelSize);
+    }
+
+    /**
+     * 预占库存，任一商品库存不足时全部不占
+     *
+     * @param token      订单令牌
+     * @param lines      商品id -> 数量，同一商品需提前合并
+     * @param ttlSeconds 有效期（秒），为null时使用默认值
+     */
+    public void reserve(String token, Map<Long, Integer> lines, Integer ttlSeconds) {
+        int ttl = ttlSeconds == null ? defaultTtlSeconds : ttlSeconds;
+        if (ttl <= 0 || ttl > maxTtlSeconds) {
+            ApiAsserts.fail("预占有效期需在1到" + maxTtlSeconds + "秒之间");
+        }
+        String key = key(token);
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+            ApiAsserts.fail("订单已预占库存：" + token);
+        }
+
+        Long insufficientId = stockCounter.deduct(lines);
+        if (insufficientId != null) {
+            log.info("商品{}库存不足，预占失败，订单：{}", insufficientId, token);
+            ApiAsserts.fail("商品库存不足：" + insufficientId);
+        }
+        // 先扣减再记录预占，中途失败时最多少卖，不会超卖
+        long expireAt = System.currentTimeMillis() + ttl * 1000L;
+        Long created = stringRedisTemplate.execute(PUT_SCRIPT, Arrays.asList(key, EXPIRY_KEY),
+                encode(lines), String.valueOf(ttl + RETENTION_SECONDS), String.valueOf(expireAt), token);
+        if (created == null || created != 1) {
+            stockCounter.restore(lines);
+            ApiAsserts.fail("订单已预占库存：" + token);
+        }
+        timerWheel.add(token, ttl * 1000L);
+    }
+
+    /**
+     * 确认预占，转为销售并异步写回数据库
+     */
+    public void confirm(String token) {
+        Map<Long, Integer> lines = take(token);
+        if (lines == null) {
+            ApiAsserts.fail("预占不存在或已过期：" + token);
+        }
+        stockWriteBehind.deduct(lines);
+    }
+
+    /**
+     * 释放预占，库存加回计数
+     *
+     * @return 预占不存在（已确认、已释放或已过期回收）时返回false
+     */
+    public boolean release(String token) {
+        Map<Long, Integer> lines = take(token);
+        if (lines == null) {
+            return false;
+        }
+        stockCounter.restore(lines);
+        return true;
+    }
+
+    /**
+     * 推进时间轮，回收本节点到期的预占
+     */
+    @Scheduled(fixedRateString = "${byte.stock.reservation.tick-ms:1000}")
+    public void tick() {
+        for (String token : timerWheel.advance()) {
+            expire(token);
+        }
+    }
+
+    /**
+     * 兜底回收创建节点未能回收的预占（如节点宕机或重启）
+     */
+    @Scheduled(fixedDelayString = "${byte.stock.reservation.sweep-interval-ms:60000}")
+    public void sweep() {
+        long maxExpireAt = System.currentTimeMillis() - sweepGraceMillis;
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String expiryKey : Arrays.asList(EXPIRY_KEY, LEGACY_EXPIRY_KEY)) {
+            Set<String> expired = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(expiryKey, 0, maxExpireAt, 0, sweepBatchSize);
+            if (expired != null) {
+                tokens.addAll(expired);
+            }
+        }
+        if (tokens.isEmpty()) {
+            return;
+        }
+        for (String token : tokens) {
+            expire(token);
+        }
+        log.info("兜底回收过期库存预占{}个", tokens.size());
+    }
+
+    private void expire(String token) {
+        try {
+            if (release(token)) {
+                log.info("库存预占已过期，释放库存，订单：{}", token);
+            }
+        } catch (Exception e) {
+            log.error("过期库存预占回收失败，订单：{}", token, e);
+        }
+    }
+
+    private Map<Long, Integer> take(String token) {
+        timerWheel.remove(token);
+        String value = stringRedisTemplate.execute(TAKE_SCRIPT, Arrays.asList(key(token), EXPIRY_KEY), token);
+        if (value == null) {
+            value = stringRedisTemplate.execute(TAKE_SCRIPT,
+                    Arrays.asList(LEGACY_RESERVATION_KEY_PREFIX + token, LEGACY_EXPIRY_KEY), token);
+        }
+        return value == null ? null : decode(value);
+    }
+
+    /**
+     * 明细编码为 商品id:数量,商品id:数量
+     */
+    private static String encode(Map<Long, Integer> lines) {
+        StringBuilder value = new StringBuilder();
+        lines.forEach((itemId, num) -> {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(itemId).append(':').append(num);
+        });
+        return value.toString();
+    }
+
+    private static Map<Long, Integer> decode(String value) {
+        Map<Long, Integer> lines = new LinkedHashMap<>();
+        for (String line : value.split(",")) {
+            String[] fields = line.split(":");
+            lines.put(Long.valueOf(fields[0]), Integer.valueOf(fields[1]));
+        }
+        return lines;
+    }
+
+    private static String key(String token) {
+        return RESERVATION_KEY_PREFIX + token;
+    }
+}
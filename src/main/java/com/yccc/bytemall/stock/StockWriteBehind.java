@@ -0,0 +1,319 @@
+package com.yccc.bytemall.stock;
+
+import com.yccc.bytemall.index.ItemNameIndex;
+import com.yccc.bytemall.mapper.ItemMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 库存变更的异步写回
+ * 库存和销量的增量先追加到本地日志，再在内存中按商品合并，达到数量阈值或定时触发时以JDBC批量更新写回数据库。
+ * 日志按段滚动：每次刷盘前封存当前段，写回在独立事务中提交成功后才删除已封存的段；启动时回放残留的日志段。
+ * 写回提交后、删除日志段前进程崩溃时，重启回放会重复应用这一批增量，此窗口只有一次文件删除的时间
+ */
+@Component
+@DependsOnDatabaseInitialization
+@Slf4j
+public class StockWriteBehind {
+
+    private static final String SEGMENT_PREFIX = "stock-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // 合并后的商品数达到该值时触发刷盘
+    @Value("${byte.stock.write-behind.batch-size:500}")
+    private int batchSize;
+
+    // 本地日志目录
+    @Value("${byte.stock.write-behind.journal-dir:./data/stock-journal}")
+    private String journalDir;
+
+    // 每次追加日志后是否强制落盘，关闭时只保证进程崩溃不丢数据，机器掉电可能丢失最近的增量
+    @Value("${byte.stock.write-behind.fsync:false}")
+    private boolean fsync;
+
+    @Resource
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Resource
+    private ThreadPoolTaskExecutor stockSyncExecutor;
+
+    @Resource
+    private ItemNameIndex itemNameIndex;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    // 写回使用独立事务，调用方处于事务中时也不会并入其中，确保删除日志段前增量已提交
+    private TransactionTemplate writeTemplate;
+
+    // 商品id -> 尚未写回的增量
+    private Map<Long, Delta> pending = new HashMap<>();
+
+    // 已封存、内容尚未确认写回的日志段
+    private final List<Path> sealedSegments = new ArrayList<>();
+
+    private final Object appendLock = new Object();
+
+    private final Object flushLock = new Object();
+
+    private Path directory;
+
+    private Path currentSegment;
+
+    private FileChannel channel;
+
+    private long segmentSeq;
+
+    @PostConstruct
+    public void init() throws IOException {
+        writeTemplate = new TransactionTemplate(transactionManager);
+        writeTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        directory = Paths.get(journalDir);
+        Files.createDirectories(directory);
+        replay();
+        openSegment();
+        flush();
+    }
+
+    /**
+     * 记录一批库存增量，写入日志后返回，数据库异步更新
+     *
+     * @param stockDeltas 商品id -> 库存增量（扣减为负数）
+     * @param soldDeltas  商品id -> 销量增量
+     */
+    public void append(Map<Long, Integer> stockDeltas, Map<Long, Integer> soldDeltas) {
+        Set<Long> itemIds = new LinkedHashSet<>(stockDeltas.keySet());
+        itemIds.addAll(soldDeltas.keySet());
+        StringBuilder records = new StringBuilder();
+        for (Long itemId : itemIds) {
+            records.append(itemId).append(',')
+                    .append(stockDeltas.getOrDefault(itemId, 0)).append(',')
+                    .append(soldDeltas.getOrDefault(itemId, 0)).append('\n');
+        }
+        int size;
+        synchronized (appendLock) {
+            write(records.toString());
+            for (Long itemId : itemIds) {
+                merge(itemId, stockDeltas.getOrDefault(itemId, 0), soldDeltas.getOrDefault(itemId, 0));
+            }
+            size = pending.size();
+        }
+        if (size >= batchSize) {
+            triggerFlush();
+        }
+    }
+
+    /**
+     * 扣减库存并累加销量
+     */
+    public void deduct(Map<Long, Integer> lines) {
+        Map<Long, Integer> stockDeltas = new LinkedHashMap<>();
+        lines.forEach((itemId, num) -> stockDeltas.put(itemId, -num));
+        append(stockDeltas, lines);
+    }
+
+    @Scheduled(fixedDelayString = "${byte.stock.write-behind.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 封存当前日志段并将合并后的增量批量写回数据库，失败时增量放回内存等待下次写回
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<Long, Delta> batch;
+            synchronized (appendLock) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new HashMap<>();
+                sealSegment();
+            }
+            try {
+                writeBatch(batch);
+            } catch (Exception e) {
+                log.error("库存增量写回数据库失败，{}个商品等待下次写回", batch.size(), e);
+                synchronized (appendLock) {
+                    batch.forEach((itemId, delta) -> merge(itemId, delta.stock, delta.sold));
+                }
+                return;
+            }
+            List<Path> flushed;
+            synchronized (appendLock) {
+                flushed = new ArrayList<>(sealedSegments);
+                sealedSegments.clear();
+            }
+            for (Path segment : flushed) {
+                try {
+                    Files.deleteIfExists(segment);
+                } catch (IOException e) {
+                    log.error("删除已写回的库存日志段{}失败", segment, e);
+                }
+            }
+            // 名称搜索按销量排序，通知各节点更新销量
+            List<Long> soldChanged = batch.entrySet().stream()
+                    .filter(entry -> entry.getValue().sold != 0)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            try {
+                itemNameIndex.refreshSold(soldChanged);
+            } catch (Exception e) {
+                log.warn("销量变更通知失败，名称搜索的销量排序暂时不准确", e);
+            }
+            log.debug("库存增量写回数据库，共{}个商品", batch.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        flush();
+        synchronized (appendLock) {
+            channel.close();
+        }
+    }
+
+    private void triggerFlush() {
+        try {
+            stockSyncExecutor.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            // 已有刷盘任务在排队，由其一并写回
+        }
+    }
+
+    /**
+     * 批量会话使用事务模板开启的连接，模板返回时增量已提交
+     */
+    private void writeBatch(Map<Long, Delta> batch) {
+        writeTemplate.executeWithoutResult(status -> {
+            try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+                ItemMapper mapper = session.getMapper(ItemMapper.class);
+                for (Map.Entry<Long, Delta> entry : batch.entrySet()) {
+                    Delta delta = entry.getValue();
+                    if (delta.stock != 0 || delta.sold != 0) {
+                        mapper.applyStockDelta(entry.getKey(), delta.stock, delta.sold);
+                    }
+                }
+                session.flushStatements();
+                session.commit();
+            }
+        });
+    }
+
+    /**
+     * 调用方需持有appendLock
+     */
+    private void merge(Long itemId, long stock, long sold) {
+        Delta delta = pending.computeIfAbsent(itemId, key -> new Delta());
+        delta.stock += stock;
+        delta.sold += sold;
+    }
+
+    /**
+     * 读取残留的日志段，增量放入内存，日志段在写回成功后删除
+     */
+    private void replay() throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(this::isSegment)
+                    .sorted(Comparator.comparingLong(this::segmentSeq))
+                    .collect(Collectors.toList());
+        }
+        long records = 0;
+        for (Path segment : segments) {
+            String content = new String(Files.readAllBytes(segment), StandardCharsets.UTF_8);
+            // 最后一个换行之后是崩溃时写了一半的记录，丢弃
+            int end = content.lastIndexOf('\n');
+            for (String line : content.substring(0, end + 1).split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                merge(Long.valueOf(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+                records++;
+            }
+            sealedSegments.add(segment);
+            segmentSeq = Math.max(segmentSeq, segmentSeq(segment));
+        }
+        if (!segments.isEmpty()) {
+            log.info("回放{}个库存日志段，共{}条记录，{}个商品待写回", segments.size(), records, pending.size());
+        }
+    }
+
+    /**
+     * 调用方需持有appendLock
+     */
+    private void write(String records) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("库存日志写入失败", e);
+        }
+    }
+
+    /**
+     * 调用方需持有appendLock
+     */
+    private void sealSegment() {
+        try {
+            channel.force(false);
+            channel.close();
+            sealedSegments.add(currentSegment);
+            openSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("库存日志段滚动失败", e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        currentSegment = directory.resolve(SEGMENT_PREFIX + (++segmentSeq) + SEGMENT_SUFFIX);
+        channel = FileChannel.open(currentSegment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private long segmentSeq(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static final class Delta {
+        private long stock;
+        private long sold;
+    }
+}
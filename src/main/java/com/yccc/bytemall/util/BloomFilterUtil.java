@@ -1,10 +1,17 @@
 package com.yccc.bytemall.util;
 
+import io.netty.buffer.ByteBuf;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBitSetAsync;
 import org.redisson.api.RBloomFilter;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.misc.Hash;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.Collection;
 
 @Component
 public class BloomFilterUtil {
@@ -24,4 +31,75 @@ public class BloomFilterUtil {
         bloomFilter.tryInit(expectedInsertions, falsePositiveRate);
         return bloomFilter;
     }
+
+    /**
+     * 使用指定编码器创建布隆过滤器
+     *
+     * @param filterName         过滤器名称
+     * @param codec              元素编码器，决定元素的哈希结果
+     * @param expectedInsertions 预测插入数量
+     * @param falsePositiveRate  误判率
+     */
+    public <T> RBloomFilter<T> create(String filterName, Codec codec, long expectedInsertions, double falsePositiveRate) {
+        RBloomFilter<T> bloomFilter = redissonClient.getBloomFilter(filterName, codec);
+        bloomFilter.tryInit(expectedInsertions, falsePositiveRate);
+        return bloomFilter;
+    }
+
+    /**
+     * 批量添加元素，所有元素的置位命令通过一次pipeline提交
+     *
+     * @param bloomFilter 已初始化的布隆过滤器
+     * @param values      待添加的元素
+     */
+    public <T> void addAll(RBloomFilter<T> bloomFilter, Collection<T> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        long size = bloomFilter.getSize();
+        int hashIterations = bloomFilter.getHashIterations();
+        RBatch batch = redissonClient.createBatch();
+        RBitSetAsync bitSet = batch.getBitSet(bloomFilter.getName());
+        for (T value : values) {
+            for (long index : hashIndexes(bloomFilter.getCodec(), value, hashIterations, size)) {
+                bitSet.setAsync(index);
+            }
+        }
+        batch.execute();
+    }
+
+    /**
+     * 计算元素在位数组中对应的下标，算法与RedissonBloomFilter保持一致
+     *
+     * @param codec          布隆过滤器使用的编码器
+     * @param value          元素
+     * @param hashIterations 哈希函数个数
+     * @param size           位数组长度
+     */
+    public long[] hashIndexes(Codec codec, Object value, int hashIterations, long size) {
+        long[] hashes;
+        ByteBuf state;
+        try {
+            state = codec.getValueEncoder().encode(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        try {
+            hashes = Hash.hash128(state);
+        } finally {
+            state.release();
+        }
+
+        long[] indexes = new long[hashIterations];
+        long hash = hashes[0];
+        for (int i = 0; i < hashIterations; i++) {
+            indexes[i] = (hash & Long.MAX_VALUE) % size;
+            if (i % 2 == 0) {
+                hash += hashes[1];
+            } else {
+                hash += hashes[0];
+            }
+        }
+        return indexes;
+    }
 }
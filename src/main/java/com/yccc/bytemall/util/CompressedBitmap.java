@@ -0,0 +1,454 @@
+package com.yccc.bytemall.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 压缩位图，存储非负int集合
+ * 按高16位分桶，每个桶内的低16位在稀疏时用有序数组存储，稠密时用定长位图存储（与RoaringBitmap思路一致）
+ * 非线程安全，并发访问由调用方加锁
+ */
+public class CompressedBitmap {
+
+    // 数组容器的最大元素数，超过后转换为位图容器（4096个char与1024个long占用相同）
+    private static final int ARRAY_MAX = 4096;
+
+    private char[] keys = new char[4];
+
+    private Container[] containers = new Container[4];
+
+    private int size = 0;
+
+    public boolean add(int value) {
+        checkValue(value);
+        char high = (char) (value >>> 16);
+        int index = indexOf(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, high, new ArrayContainer());
+        }
+        Container container = containers[index];
+        boolean added = container.add((char) value);
+        if (container instanceof ArrayContainer && container.cardinality() > ARRAY_MAX) {
+            containers[index] = ((ArrayContainer) container).toBitmap();
+        }
+        return added;
+    }
+
+    public boolean remove(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = indexOf((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        Container container = containers[index];
+        boolean removed = container.remove((char) value);
+        if (container.cardinality() == 0) {
+            removeContainer(index);
+        } else if (container instanceof BitmapContainer && container.cardinality() <= ARRAY_MAX) {
+            containers[index] = ((BitmapContainer) container).toArray();
+        }
+        return removed;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = indexOf((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 求交集，返回新的位图，不修改当前位图
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.insertContainer(result.size, keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按升序遍历所有元素，不复制到数组
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            Container container = containers[i];
+            int low = container.nextValue((char) 0);
+            while (low >= 0) {
+                action.accept(high | low);
+                low = low == 0xFFFF ? -1 : container.nextValue((char) (low + 1));
+            }
+        }
+    }
+
+    /**
+     * 按升序跳过offset个元素后取最多limit个元素，用于按页码分页
+     */
+    public int[] slice(long offset, int limit) {
+        if (limit <= 0 || offset < 0) {
+            return new int[0];
+        }
+        int[] out = new int[limit];
+        int count = 0;
+        long remaining = offset;
+        for (int i = 0; i < size && count < limit; i++) {
+            Container container = containers[i];
+            int cardinality = container.cardinality();
+            if (remaining >= cardinality) {
+                // 整个容器都在偏移量之内，直接跳过
+                remaining -= cardinality;
+                continue;
+            }
+            int low = container.select((int) remaining);
+            remaining = 0;
+            count = collect(i, low, out, count, limit);
+            break;
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * 按升序取大于after的最多limit个元素，用于按游标分页
+     */
+    public int[] after(int after, int limit) {
+        if (limit <= 0 || after == Integer.MAX_VALUE) {
+            return new int[0];
+        }
+        int[] out = new int[limit];
+        int start = Math.max(after + 1, 0);
+        char high = (char) (start >>> 16);
+        int index = indexOf(high);
+        int low;
+        if (index >= 0) {
+            low = containers[index].nextValue((char) start);
+            if (low < 0) {
+                index++;
+                low = index < size ? containers[index].nextValue((char) 0) : -1;
+            }
+        } else {
+            index = -index - 1;
+            low = index < size ? containers[index].nextValue((char) 0) : -1;
+        }
+        int count = low < 0 ? 0 : collect(index, low, out, 0, limit);
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * 从第index个容器的low开始按升序收集元素
+     */
+    private int collect(int index, int low, int[] out, int count, int limit) {
+        while (count < limit && index < size) {
+            out[count++] = (keys[index] << 16) | low;
+            int next = low == 0xFFFF ? -1 : containers[index].nextValue((char) (low + 1));
+            if (next < 0) {
+                index++;
+                if (index >= size) {
+                    break;
+                }
+                next = containers[index].nextValue((char) 0);
+            }
+            low = next;
+        }
+        return count;
+    }
+
+    private int indexOf(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private void insertContainer(int index, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = high;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("只支持非负整数：" + value);
+        }
+    }
+
+    private interface Container {
+        boolean add(char low);
+
+        boolean remove(char low);
+
+        boolean contains(char low);
+
+        int cardinality();
+
+        /**
+         * 大于等于from的最小元素，不存在时返回-1
+         */
+        int nextValue(char from);
+
+        /**
+         * 升序第rank个元素（从0开始）
+         */
+        int select(int rank);
+
+        Container and(Container other);
+    }
+
+    /**
+     * 稀疏容器：有序char数组
+     */
+    private static final class ArrayContainer implements Container {
+        private char[] values;
+        private int cardinality;
+
+        private ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public boolean add(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX + 1));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return true;
+        }
+
+        @Override
+        public boolean remove(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        @Override
+        public boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public int nextValue(char from) {
+            int index = Arrays.binarySearch(values, 0, cardinality, from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < cardinality ? values[index] : -1;
+        }
+
+        @Override
+        public int select(int rank) {
+            return values[rank];
+        }
+
+        @Override
+        public Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * 稠密容器：65536位的定长位图
+     */
+    private static final class BitmapContainer implements Container {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapContainer() {
+            this(new long[1024], 0);
+        }
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public boolean add(char low) {
+            long before = words[low >>> 6];
+            long after = before | (1L << low);
+            words[low >>> 6] = after;
+            if (before != after) {
+                cardinality++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean remove(char low) {
+            long before = words[low >>> 6];
+            long after = before & ~(1L << low);
+            words[low >>> 6] = after;
+            if (before != after) {
+                cardinality--;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public int nextValue(char from) {
+            int wordIndex = from >>> 6;
+            long word = words[wordIndex] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++wordIndex == words.length) {
+                    return -1;
+                }
+                word = words[wordIndex];
+            }
+        }
+
+        @Override
+        public int select(int rank) {
+            int remaining = rank;
+            for (int i = 0; i < words.length; i++) {
+                int bits = Long.bitCount(words[i]);
+                if (remaining < bits) {
+                    long word = words[i];
+                    for (int k = 0; k < remaining; k++) {
+                        // 清除最低位的1
+                        word &= word - 1;
+                    }
+                    return (i << 6) + Long.numberOfTrailingZeros(word);
+                }
+                remaining -= bits;
+            }
+            throw new IndexOutOfBoundsException("rank超出范围：" + rank);
+        }
+
+        @Override
+        public Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            long[] result = new long[words.length];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                result[i] = words[i] & bitmap.words[i];
+                count += Long.bitCount(result[i]);
+            }
+            BitmapContainer container = new BitmapContainer(result, count);
+            return count <= ARRAY_MAX ? container.toArray() : container;
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[Math.max(cardinality, 4)];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.yccc.bytemall.util;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yccc.bytemall.entity.dto.ItemDTO;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 逐行读取商品导入数据，不把整个文件读入内存
+ * 支持两种格式：
+ * NDJSON：每行一个ItemDTO的JSON对象；
+ * CSV：首行为表头，列名取ItemDTO的字段名（name、price、image、brand、stock、description、category），
+ * 类别列内多个类别用|分隔；字段中的逗号和引号按RFC 4180用双引号转义，不支持跨行字段
+ */
+public class ItemRecordReader implements Closeable {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final BufferedReader reader;
+
+    private final Format format;
+
+    private List<String> header;
+
+    private long line = 0;
+
+    // 表头无法解析时后续行无法对应到列，不再读取
+    private boolean stopped;
+
+    public ItemRecordReader(InputStream in, Format format) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.format = format;
+    }
+
+    /**
+     * 读取下一条记录，跳过空行，读完时返回null
+     * 解析失败的行返回带错误信息的记录，不中断读取；CSV表头解析失败时返回表头行的错误记录，之后不再读取
+     */
+    public Record next() throws IOException {
+        if (stopped) {
+            return null;
+        }
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.trim().isEmpty()) {
+                continue;
+            }
+            if (format == Format.CSV && header == null) {
+                try {
+                    header = parseCsvLine(text.startsWith("\uFEFF") ? text.substring(1) : text);
+                } catch (IllegalArgumentException e) {
+                    stopped = true;
+                    return new Record(line, null, "表头格式错误：" + e.getMessage());
+                }
+                continue;
+            }
+            try {
+                ItemDTO itemDTO = format == Format.CSV ? parseCsv(text) : OBJECT_MAPPER.readValue(text, ItemDTO.class);
+                if (itemDTO == null) {
+                    return new Record(line, null, "格式错误：记录为null");
+                }
+                return new Record(line, itemDTO, null);
+            } catch (Exception e) {
+                return new Record(line, null, "格式错误：" + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private ItemDTO parseCsv(String text) {
+        List<String> fields = parseCsvLine(text);
+        if (fields.size() != header.size()) {
+            throw new IllegalArgumentException("列数为" + fields.size() + "，表头为" + header.size() + "列");
+        }
+        ItemDTO itemDTO = new ItemDTO();
+        for (int i = 0; i < fields.size(); i++) {
+            String value = fields.get(i).isEmpty() ? null : fields.get(i);
+            switch (header.get(i).trim()) {
+                case "name":
+                    itemDTO.setName(value);
+                    break;
+                case "price":
+                    itemDTO.setPrice(value == null ? null : Integer.valueOf(value.trim()));
+                    break;
+                case "image":
+                    itemDTO.setImage(value);
+                    break;
+                case "brand":
+                    itemDTO.setBrand(value);
+                    break;
+                case "stock":
+                    itemDTO.setStock(value == null ? null : Integer.valueOf(value.trim()));
+                    break;
+                case "description":
+                    itemDTO.setDescription(value);
+                    break;
+                case "category":
+                    itemDTO.setCategory(value == null ? new ArrayList<>() : Arrays.asList(value.split("\\|")));
+                    break;
+                default:
+                    // 忽略未知列
+            }
+        }
+        return itemDTO;
+    }
+
+    static List<String> parseCsvLine(String text) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("引号未闭合");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    public static final class Record {
+        private final long line;
+        private final ItemDTO item;
+        private final String error;
+
+        private Record(long line, ItemDTO item, String error) {
+            this.line = line;
+            this.item = item;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public ItemDTO getItem() {
+            return item;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.yccc.bytemall.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 请求微批合并：在一个短时间窗口内到达的单key查询合并为一次批量加载，结果分发给各调用方
+ * 窗口内第一个到达的调用方作为批次的执行者，最多等待一个窗口（批次凑满时提前结束），
+ * 随后在自己的线程中执行批量加载；其余调用方等待结果，同一批次内相同的key只加载一次
+ * 不需要额外的线程，单个请求最多增加一个窗口的延迟
+ *
+ * @param <K> 键类型
+ * @param <V> 结果类型
+ */
+public class RequestCollapser<K, V> {
+
+    private final int maxBatchSize;
+
+    private final long windowNanos;
+
+    private final Function<List<K>, Map<K, V>> loader;
+
+    // 正在收集的批次
+    private Batch<K, V> current;
+
+    /**
+     * @param maxBatchSize 每批最多的key数量，达到后立即加载
+     * @param window       收集窗口
+     * @param unit         时间单位
+     * @param loader       批量加载逻辑，返回结果中没有的key视为null
+     */
+    public RequestCollapser(int maxBatchSize, long window, TimeUnit unit, Function<List<K>, Map<K, V>> loader) {
+        if (maxBatchSize <= 0 || window < 0) {
+            throw new IllegalArgumentException("批次大小必须为正数，窗口不能为负数");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+        this.loader = loader;
+    }
+
+    public V get(K key) {
+        Batch<K, V> batch;
+        CompletableFuture<V> future;
+        boolean leader = false;
+        synchronized (this) {
+            if (current == null) {
+                current = new Batch<>();
+                leader = true;
+            }
+            batch = current;
+            future = batch.futures.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if (batch.futures.size() >= maxBatchSize) {
+                // 批次已满，后续请求进入新的批次
+                current = null;
+                batch.full.countDown();
+            }
+        }
+        if (leader) {
+            execute(batch);
+        }
+        return await(future);
+    }
+
+    private void execute(Batch<K, V> batch) {
+        boolean interrupted = false;
+        try {
+            batch.full.await(windowNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            // 仍需为其他调用方完成加载，结束后恢复中断状态
+            interrupted = true;
+        }
+        synchronized (this) {
+            if (current == batch) {
+                current = null;
+            }
+        }
+        // 批次已从current移除，之后不会再有新的key加入
+        try {
+            Map<K, V> values = loader.apply(new ArrayList<>(batch.futures.keySet()));
+            batch.futures.forEach((key, future) -> future.complete(values.get(key)));
+        } catch (RuntimeException | Error e) {
+            batch.futures.values().forEach(future -> future.completeExceptionally(e));
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // 将加载方抛出的原始异常透传给等待方
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Batch<K, V> {
+        // 只在持有collapser的锁时修改
+        private final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+    }
+}
@@ -0,0 +1,98 @@
+package com.yccc.bytemall.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 滑动窗口频率估计（Count-Min Sketch）
+ * 窗口划分为若干个桶，每个桶是一个depth行、width列的计数矩阵；计数只写入当前桶，
+ * 估计值为各行对应计数在所有桶上之和的最小值，只会高估不会低估；
+ * 由调用方按 窗口长度/桶数 的间隔调用rotate，清空最旧的桶并作为新的当前桶
+ * 内存占用固定为 桶数*depth*width 个int，与key的数量无关；并发计数不加锁，rotate期间的少量计数误差可以接受
+ */
+public class SlidingWindowSketch {
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x94D049BB133111EBL
+    };
+
+    private final AtomicIntegerArray[] buckets;
+
+    private final int depth;
+
+    private final int mask;
+
+    private volatile int current = 0;
+
+    /**
+     * @param width   每行的计数个数，向上取整为2的幂
+     * @param depth   行数（哈希函数个数），1到8
+     * @param buckets 窗口划分的桶数
+     */
+    public SlidingWindowSketch(int width, int depth, int buckets) {
+        if (width <= 0 || depth <= 0 || depth > SEEDS.length || buckets <= 0) {
+            throw new IllegalArgumentException("width、buckets必须为正数，depth需在1到" + SEEDS.length + "之间");
+        }
+        int size = Integer.highestOneBit(width);
+        if (size < width) {
+            size <<= 1;
+        }
+        this.depth = depth;
+        this.mask = size - 1;
+        this.buckets = new AtomicIntegerArray[buckets];
+        for (int i = 0; i < buckets; i++) {
+            this.buckets[i] = new AtomicIntegerArray(depth * size);
+        }
+    }
+
+    /**
+     * 计数加一，返回加一后整个窗口内的估计次数
+     */
+    public int increment(long key) {
+        AtomicIntegerArray bucket = buckets[current];
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = index(key, row);
+            bucket.incrementAndGet(index);
+            estimate = Math.min(estimate, sum(index));
+        }
+        return estimate;
+    }
+
+    /**
+     * 整个窗口内的估计次数
+     */
+    public int estimate(long key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, sum(index(key, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * 窗口向前滑动一个桶，丢弃最旧的桶的计数
+     */
+    public synchronized void rotate() {
+        int next = (current + 1) % buckets.length;
+        AtomicIntegerArray bucket = buckets[next];
+        for (int i = 0; i < bucket.length(); i++) {
+            bucket.set(i, 0);
+        }
+        current = next;
+    }
+
+    private int sum(int index) {
+        int sum = 0;
+        for (AtomicIntegerArray bucket : buckets) {
+            sum += bucket.get(index);
+        }
+        return sum;
+    }
+
+    private int index(long key, int row) {
+        long h = (key + SEEDS[row]) * SEEDS[(row + 1) % SEEDS.length];
+        h ^= h >>> 31;
+        return row * (mask + 1) + ((int) (h ^ (h >>> 32)) & mask);
+    }
+}
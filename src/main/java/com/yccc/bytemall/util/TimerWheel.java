@@ -0,0 +1,78 @@
+package com.yccc.bytemall.util;
+
+import java.util.*;
+
+/**
+ * 时间轮，管理大量定时到期的key
+ * 时间轴划分为固定数量的槽，每个槽保存在该槽到期的key及其剩余圈数；每个tick只处理当前槽，
+ * 添加、删除为O(1)，到期处理的代价只与到期及所在槽的key数量有关，与总数量无关
+ * 所有方法都加锁，由调用方按固定间隔调用advance推进
+ */
+public class TimerWheel<K> {
+
+    private final long tickMillis;
+
+    // 每个槽：key -> 剩余圈数
+    private final List<Map<K, Integer>> slots;
+
+    // key -> 所在槽
+    private final Map<K, Integer> slotOf = new HashMap<>();
+
+    private int cursor = 0;
+
+    public TimerWheel(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tick间隔和槽数必须为正数");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            slots.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * 添加key，在delayMillis后到期，已存在时重新计时
+     */
+    public synchronized void add(K key, long delayMillis) {
+        remove(key);
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        int size = slots.size();
+        int slot = (int) ((cursor + ticks) % size);
+        slots.get(slot).put(key, (int) ((ticks - 1) / size));
+        slotOf.put(key, slot);
+    }
+
+    public synchronized boolean remove(K key) {
+        Integer slot = slotOf.remove(key);
+        return slot != null && slots.get(slot).remove(key) != null;
+    }
+
+    /**
+     * 推进一个tick，返回本tick到期的key
+     */
+    public synchronized List<K> advance() {
+        cursor = (cursor + 1) % slots.size();
+        List<K> expired = new ArrayList<>();
+        Iterator<Map.Entry<K, Integer>> iterator = slots.get(cursor).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Integer> entry = iterator.next();
+            if (entry.getValue() == 0) {
+                expired.add(entry.getKey());
+                slotOf.remove(entry.getKey());
+                iterator.remove();
+            } else {
+                entry.setValue(entry.getValue() - 1);
+            }
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return slotOf.size();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+}
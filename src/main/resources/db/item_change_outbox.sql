@@ -0,0 +1,8 @@
+-- 商品变更发件箱，与商品写操作在同一事务中写入，缓存同步完成后删除
+-- 由spring.sql.init在应用启动时执行，可重复执行
+create table if not exists item_change_outbox
+(
+    id          bigint auto_increment primary key,
+    item_id     bigint   not null,
+    create_time datetime not null default current_timestamp
+);
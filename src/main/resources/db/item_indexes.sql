@@ -0,0 +1,5 @@
+-- 商品列表查询依赖的索引，上线前在业务库执行一次（MySQL不支持create index if not exists，重复执行会报索引已存在）
+-- 按销量排序的游标分页（order by sold desc, id desc）和启动预热的销量排行（selectTopSellingIds）
+alter table item add index idx_item_sold_id (sold, id);
+-- 按类别浏览：按名称定位类别后按item_id有序读取，游标分页和IN查询都不需要回表排序
+alter table category add index idx_category_name_item_id (name, item_id);
@@ -0,0 +1,16 @@
+-- 将不存在的商品id加入当前时间段的空值集合，集合在下一个时间段结束时整体过期
+-- 最近被确认存在（由发件箱中继移除）的id不加入，避免查询数据库后、写入前商品被创建的并发把新商品挡住
+-- KEYS[1]：当前时间段的空值集合；KEYS[2]、KEYS[3]：当前和上一个时间段的已存在集合
+-- ARGV[1]：集合的过期时间戳（毫秒），ARGV[2..]：商品id
+-- 返回：与商品id对应的列表，1表示已加入
+local result = {}
+for i = 2, #ARGV do
+    local added = 0
+    if redis.call('sismember', KEYS[2], ARGV[i]) == 0 and redis.call('sismember', KEYS[3], ARGV[i]) == 0 then
+        redis.call('sadd', KEYS[1], ARGV[i])
+        added = 1
+    end
+    result[i - 1] = added
+end
+redis.call('pexpireat', KEYS[1], ARGV[1])
+return result
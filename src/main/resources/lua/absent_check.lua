@@ -0,0 +1,16 @@
+-- 批量判断商品id是否在空值缓存中
+-- KEYS：当前和上一个时间段的空值集合（同一个hash tag）
+-- ARGV：商品id
+-- 返回：与ARGV对应的列表，1表示商品不存在
+local result = {}
+for i = 1, #ARGV do
+    local absent = 0
+    for j = 1, #KEYS do
+        if redis.call('sismember', KEYS[j], ARGV[i]) == 1 then
+            absent = 1
+            break
+        end
+    end
+    result[i] = absent
+end
+return result
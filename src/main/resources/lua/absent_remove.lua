@@ -0,0 +1,10 @@
+-- 商品已存在：从当前和上一个时间段的空值集合中移除，并记入当前时间段的已存在集合
+-- KEYS[1]、KEYS[2]：当前和上一个时间段的空值集合；KEYS[3]：当前时间段的已存在集合
+-- ARGV[1]：已存在集合的过期时间戳（毫秒），ARGV[2..]：商品id
+for i = 2, #ARGV do
+    redis.call('srem', KEYS[1], ARGV[i])
+    redis.call('srem', KEYS[2], ARGV[i])
+    redis.call('sadd', KEYS[3], ARGV[i])
+end
+redis.call('pexpireat', KEYS[3], ARGV[1])
+return 1
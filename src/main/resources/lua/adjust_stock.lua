@@ -0,0 +1,26 @@
+-- 将一个商品的可售库存设置为目标值：汇总当前计数得到增量，再把目标值平均分配到各库存key
+-- KEYS[1]：商品的分段数key；其余：商品当前的库存key
+-- ARGV[1]：调用方认为的当前分段数；ARGV[2]：目标库存
+-- 返回：{1, 目标库存与原计数之差}；库存key都不存在时返回{-1, 0}；当前分段数已被其他节点修改时返回{-2, 0}；这两种情况不做任何修改
+local sources = tonumber(ARGV[1])
+local current = tonumber(redis.call('get', KEYS[1]) or '1')
+if current ~= sources then return {-2, 0} end
+local total = 0
+local loaded = false
+for i = 2, #KEYS do
+    local stock = redis.call('get', KEYS[i])
+    if stock then
+        loaded = true
+        total = total + tonumber(stock)
+    end
+end
+if not loaded then return {-1, 0} end
+local target = tonumber(ARGV[2])
+local base = math.floor(target / sources)
+local extra = target % sources
+for i = 1, sources do
+    local stock = base
+    if i <= extra then stock = stock + 1 end
+    redis.call('set', KEYS[i + 1], stock)
+end
+return {1, target - total}
@@ -0,0 +1,24 @@
+-- 从同一商品的其他分段向目标分段调拨库存，使目标分段至少有need个
+-- KEYS：该商品的全部分段库存key
+-- ARGV[1]：目标分段下标（从1开始）；ARGV[2]：目标分段需要的库存
+-- 返回：1 调拨成功；0 所有分段合计也不足
+local target = tonumber(ARGV[1])
+local need = tonumber(ARGV[2])
+local stocks = {}
+local total = 0
+for i = 1, #KEYS do
+    stocks[i] = tonumber(redis.call('get', KEYS[i]) or '0')
+    total = total + stocks[i]
+end
+if total < need then return 0 end
+local lack = need - stocks[target]
+for i = 1, #KEYS do
+    if lack <= 0 then break end
+    if i ~= target and stocks[i] > 0 then
+        local moved = math.min(stocks[i], lack)
+        redis.call('decrby', KEYS[i], moved)
+        redis.call('incrby', KEYS[target], moved)
+        lack = lack - moved
+    end
+end
+return 1
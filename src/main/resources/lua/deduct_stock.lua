@@ -0,0 +1,17 @@
+-- 原子扣减一个订单所有商品的库存，全部成功或全部不扣
+-- KEYS：各商品的库存计数key
+-- ARGV：对应的扣减数量
+-- 返回：{1, 0} 成功；{0, i} 第i个商品库存不足；{-1, i} 第i个商品的库存计数未加载
+for i = 1, #KEYS do
+    local stock = redis.call('get', KEYS[i])
+    if not stock then
+        return {-1, i}
+    end
+    if tonumber(stock) < tonumber(ARGV[i]) then
+        return {0, i}
+    end
+end
+for i = 1, #KEYS do
+    redis.call('decrby', KEYS[i], ARGV[i])
+end
+return {1, 0}
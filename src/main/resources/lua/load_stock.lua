@@ -0,0 +1,9 @@
+-- 从数据库加载一个商品的库存计数：商品未分段时才写入单个计数，已存在的计数不覆盖
+-- 分段判断与写入在同一个脚本中，重新分段删除单个计数后不会再被写回，与分段计数同时存在
+-- KEYS[1]：商品的分段数key；KEYS[2]：商品的单个库存key
+-- ARGV[1]：数据库中的库存
+-- 返回：1 写入或已存在；0 商品已分段，不做任何修改
+local segments = tonumber(redis.call('get', KEYS[1]) or '1')
+if segments > 1 then return 0 end
+redis.call('set', KEYS[2], ARGV[1], 'NX')
+return 1
@@ -0,0 +1,9 @@
+-- 记录一个库存预占及其到期时间，两者同时写入，不会出现有明细而无到期时间的预占
+-- KEYS[1]：预占key；KEYS[2]：预占到期时间有序集合
+-- ARGV[1]：预占的商品明细；ARGV[2]：预占key的存活时间（秒）；ARGV[3]：到期时间戳（毫秒）；ARGV[4]：订单令牌
+-- 返回：1 写入成功；0 该订单已有预占，不做任何修改
+if redis.call('set', KEYS[1], ARGV[1], 'NX', 'EX', ARGV[2]) then
+    redis.call('zadd', KEYS[2], ARGV[3], ARGV[4])
+    return 1
+end
+return 0
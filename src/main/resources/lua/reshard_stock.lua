@@ -0,0 +1,32 @@
+-- 重新划分一个商品的库存分段：汇总旧的库存key，删除后平均分配到新的库存key，并更新分段数
+-- KEYS[1]：商品的分段数key；KEYS[2..n+1]：旧的库存key；其余：新的库存key（可与旧key相同）
+-- ARGV[1]：旧库存key的数量，即调用方认为的当前分段数；ARGV[2]：新的分段数，为1时删除分段数key
+-- 返回：库存总数；旧的库存key都不存在时返回-1；当前分段数已被其他节点修改时返回-2；这两种情况不做任何修改
+local sources = tonumber(ARGV[1])
+local current = tonumber(redis.call('get', KEYS[1]) or '1')
+if current ~= sources then return -2 end
+local total = 0
+local loaded = false
+for i = 2, sources + 1 do
+    local stock = redis.call('get', KEYS[i])
+    if stock then
+        loaded = true
+        total = total + tonumber(stock)
+    end
+end
+if not loaded then return -1 end
+for i = 2, sources + 1 do redis.call('del', KEYS[i]) end
+local targets = #KEYS - sources - 1
+local base = math.floor(total / targets)
+local extra = total % targets
+for i = 1, targets do
+    local stock = base
+    if i <= extra then stock = stock + 1 end
+    redis.call('set', KEYS[sources + 1 + i], stock)
+end
+if tonumber(ARGV[2]) > 1 then
+    redis.call('set', KEYS[1], ARGV[2])
+else
+    redis.call('del', KEYS[1])
+end
+return total
@@ -0,0 +1,9 @@
+-- 将库存加回计数，计数不存在时跳过（下次扣减会从数据库重新加载）
+-- KEYS：各商品的库存计数key
+-- ARGV：对应的数量
+for i = 1, #KEYS do
+    if redis.call('exists', KEYS[i]) == 1 then
+        redis.call('incrby', KEYS[i], ARGV[i])
+    end
+end
+return 1
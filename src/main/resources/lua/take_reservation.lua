@@ -0,0 +1,10 @@
+-- 取出并删除一个库存预占，确认、释放、过期回收之间只有一个能取到
+-- KEYS[1]：预占key；KEYS[2]：预占到期时间有序集合
+-- ARGV[1]：订单令牌
+-- 返回：预占的商品明细，不存在时返回nil
+local value = redis.call('get', KEYS[1])
+if value then
+    redis.call('del', KEYS[1])
+    redis.call('zrem', KEYS[2], ARGV[1])
+end
+return value
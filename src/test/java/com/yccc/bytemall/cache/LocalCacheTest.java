@@ -0,0 +1,53 @@
+package com.yccc.bytemall.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalCacheTest {
+
+    @Test
+    void putAndGet() {
+        LocalCache<String, String> cache = new LocalCache<>(100, 1, TimeUnit.MINUTES);
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    void expiresAfterWrite() throws InterruptedException {
+        LocalCache<String, String> cache = new LocalCache<>(100, 20, TimeUnit.MILLISECONDS);
+        cache.put("a", "1");
+        Thread.sleep(50);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedInSegment() {
+        // 16个分段，每段容量1；0、16、32落在同一分段
+        LocalCache<Integer, String> cache = new LocalCache<>(16, 1, TimeUnit.MINUTES);
+        cache.put(0, "a");
+        cache.put(16, "b");
+        assertNull(cache.get(0));
+        assertEquals("b", cache.get(16));
+        cache.put(1, "c");
+        assertEquals("b", cache.get(16));
+        assertEquals("c", cache.get(1));
+    }
+
+    @Test
+    void invalidate() {
+        LocalCache<String, String> cache = new LocalCache<>(100, 1, TimeUnit.MINUTES);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        cache.invalidateAll();
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,106 @@
+package com.yccc.bytemall.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RTopic;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class TwoLevelCacheTest {
+
+    private ConcurrentMapCache redisCache;
+
+    private RTopic topic;
+
+    private MeterRegistry meterRegistry;
+
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        redisCache = new ConcurrentMapCache("item");
+        topic = mock(RTopic.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new TwoLevelCache("item", new LocalCache<>(100, 1, TimeUnit.MINUTES), redisCache, topic, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void redisHitIsCopiedToLocal() {
+        redisCache.put(1L, "a");
+        assertEquals("a", cache.get(1L).get());
+        redisCache.evict(1L);
+        assertEquals("a", cache.get(1L).get());
+        assertEquals(1, count("l1", "hit"));
+        assertEquals(1, count("l1", "miss"));
+        assertEquals(1, count("l2", "hit"));
+        assertNull(cache.get(2L));
+        assertEquals(1, count("l2", "miss"));
+    }
+
+    @Test
+    void putWithoutTransactionWritesLocalImmediately() {
+        cache.put(1L, "a");
+        assertEquals("a", cache.getLocal(1L).get());
+    }
+
+    @Test
+    void putInTransactionWritesLocalAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.put(1L, "a");
+        assertNull(cache.getLocal(1L));
+        TransactionSynchronizationUtils.triggerAfterCommit();
+        assertEquals("a", cache.getLocal(1L).get());
+    }
+
+    @Test
+    void rolledBackPutLeavesLocalUntouched() {
+        cache.putLocal(1L, "old");
+        TransactionSynchronizationManager.initSynchronization();
+        cache.put(1L, "new");
+        TransactionSynchronizationManager.clearSynchronization();
+        assertNull(cache.getLocal(1L));
+    }
+
+    @Test
+    void evictInTransactionNotifiesAfterCommit() {
+        cache.putLocal(1L, "a");
+        TransactionSynchronizationManager.initSynchronization();
+        cache.evict(1L);
+        assertNull(cache.getLocal(1L));
+        verify(topic, never()).publish(anyString());
+        TransactionSynchronizationUtils.triggerAfterCommit();
+        verify(topic).publish("item::1");
+    }
+
+    @Test
+    void evictLocalHandlesAllKeys() {
+        cache.putLocal(1L, "a");
+        cache.putLocal(2L, "b");
+        cache.evictLocal("1");
+        assertNull(cache.getLocal(1L));
+        assertNotNull(cache.getLocal(2L));
+        cache.evictLocal(TwoLevelCacheManager.ALL_KEYS);
+        assertNull(cache.getLocal(2L));
+    }
+
+    private double count(String level, String result) {
+        return meterRegistry.counter("cache.level.gets", "cache", "item", "level", level, "result", result).count();
+    }
+}
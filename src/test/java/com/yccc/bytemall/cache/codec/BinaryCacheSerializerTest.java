@@ -0,0 +1,132 @@
+package com.yccc.bytemall.cache.codec;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yccc.bytemall.cache.CachedValue;
+import com.yccc.bytemall.entity.dto.ItemDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCacheSerializerTest {
+
+    private static BinaryCacheSerializer serializer(int compressThreshold, boolean readLegacyJson) {
+        return serializer(compressThreshold, readLegacyJson, true);
+    }
+
+    private static BinaryCacheSerializer serializer(int compressThreshold, boolean readLegacyJson, boolean writeBinary) {
+        Jackson2JsonRedisSerializer<Object> json = new Jackson2JsonRedisSerializer<>(Object.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        objectMapper.activateDefaultTyping(objectMapper.getPolymorphicTypeValidator(), ObjectMapper.DefaultTyping.NON_FINAL);
+        json.setObjectMapper(objectMapper);
+        return new BinaryCacheSerializer(json, compressThreshold, readLegacyJson, writeBinary)
+                .register(new CachedValueCodec())
+                .register(new ItemDTOCodec());
+    }
+
+    private static ItemDTO item() {
+        ItemDTO itemDTO = new ItemDTO();
+        itemDTO.setId(42L);
+        itemDTO.setName("手机");
+        itemDTO.setPrice(199900);
+        itemDTO.setCategory(Arrays.asList("数码", "通讯"));
+        itemDTO.setStock(7);
+        return itemDTO;
+    }
+
+    private static CachedValue<ItemDTO> cachedValue(ItemDTO itemDTO) {
+        CachedValue<ItemDTO> cachedValue = new CachedValue<>();
+        cachedValue.setValue(itemDTO);
+        cachedValue.setDelta(15);
+        cachedValue.setExpireAt(1_700_000_000_000L);
+        return cachedValue;
+    }
+
+    @Test
+    void roundTripsNestedValue() {
+        BinaryCacheSerializer serializer = serializer(0, false);
+        byte[] bytes = serializer.serialize(cachedValue(item()));
+        assertEquals(BinaryCacheSerializer.MAGIC, bytes[0] & 0xFF);
+
+        CachedValue<?> read = (CachedValue<?>) serializer.deserialize(bytes);
+        assertEquals(15, read.getDelta());
+        assertEquals(1_700_000_000_000L, read.getExpireAt());
+        assertEquals(item(), read.getValue());
+    }
+
+    @Test
+    void roundTripsCompressedValue() {
+        BinaryCacheSerializer serializer = serializer(16, false);
+        ItemDTO itemDTO = item();
+        char[] description = new char[2000];
+        Arrays.fill(description, 'a');
+        itemDTO.setDescription(new String(description));
+        byte[] bytes = serializer.serialize(itemDTO);
+        assertEquals(1, bytes[1]);
+        assertTrue(bytes.length < 2000);
+        assertEquals(itemDTO, serializer.deserialize(bytes));
+    }
+
+    @Test
+    void unknownTypeIsMiss() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BinaryCacheSerializer.MAGIC);
+        out.writeByte(0);
+        out.writeByte(0x33);
+        out.writeByte(1);
+        out.writeInt(0);
+        assertNull(serializer(0, false).deserialize(bytes.toByteArray()));
+    }
+
+    @Test
+    void truncatedValueIsMiss() {
+        BinaryCacheSerializer serializer = serializer(0, false);
+        byte[] bytes = serializer.serialize(item());
+        assertNull(serializer.deserialize(Arrays.copyOf(bytes, bytes.length - 3)));
+    }
+
+    @Test
+    void oversizedLengthIsMissWithoutAllocating() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BinaryCacheSerializer.MAGIC);
+        out.writeByte(0);
+        out.writeByte(new ItemDTOCodec().typeId());
+        out.writeByte(1);
+        out.writeInt(Integer.MAX_VALUE);
+        assertNull(serializer(0, false).deserialize(bytes.toByteArray()));
+    }
+
+    @Test
+    void corruptStringLengthIsMiss() {
+        BinaryCacheSerializer serializer = serializer(0, false);
+        byte[] bytes = serializer.serialize(item());
+        // 类型编号、版本号、内容长度之后：id（标志+8字节），其后是name的长度前缀
+        int nameLength = 2 + 1 + 1 + 4 + 1 + 8;
+        bytes[nameLength] = (byte) 0x7F;
+        assertNull(serializer.deserialize(bytes));
+    }
+
+    @Test
+    void corruptCompressedDataIsMiss() {
+        byte[] bytes = {(byte) BinaryCacheSerializer.MAGIC, 1, 5, 6, 7, 8};
+        assertNull(serializer(16, false).deserialize(bytes));
+    }
+
+    @Test
+    void legacyJsonDependsOnCompatibilityMode() {
+        byte[] legacy = serializer(0, true, false).serialize(item());
+        assertNotEquals(BinaryCacheSerializer.MAGIC, legacy[0] & 0xFF);
+        assertEquals(item(), serializer(0, true).deserialize(legacy));
+        assertNull(serializer(0, false).deserialize(legacy));
+    }
+}
@@ -0,0 +1,97 @@
+package com.yccc.bytemall.index;
+
+import com.yccc.bytemall.entity.po.Item;
+import com.yccc.bytemall.mapper.ItemMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ItemNameIndexTest {
+
+    private ItemMapper itemMapper;
+
+    private ItemNameIndex index;
+
+    @BeforeEach
+    void setUp() {
+        itemMapper = mock(ItemMapper.class);
+        index = new ItemNameIndex();
+        ReflectionTestUtils.setField(index, "itemMapper", itemMapper);
+        ReflectionTestUtils.setField(index, "batchSize", 2);
+    }
+
+    @Test
+    void indexTermsContainUnigramsAndBigramsPerSegment() {
+        assertEquals(new HashSet<>(Arrays.asList("苹", "果", "苹果", "x", "1", "x1")), ItemNameIndex.indexTerms("苹果 X1"));
+        assertTrue(ItemNameIndex.indexTerms(null).isEmpty());
+    }
+
+    @Test
+    void queryTermsUseBigramsAndSingleCharSegments() {
+        assertEquals(Arrays.asList("苹果", "果手", "手机"), ItemNameIndex.queryTerms("苹果手机"));
+        assertEquals(Arrays.asList("a", "x1"), ItemNameIndex.queryTerms("A-X1"));
+        assertTrue(ItemNameIndex.queryTerms("  ").isEmpty());
+    }
+
+    @Test
+    void searchRequiresContiguousSegments() {
+        build(item(1, "苹果手机", 10),
+                item(2, "手机苹果果手", 100),
+                item(3, "新款苹果手机壳", 50));
+
+        // 2包含全部二元组但不包含"苹果手机"
+        assertEquals(Arrays.asList(1L, 3L), index.search("苹果手机", 10));
+        // 多个片段分别校验，不要求相邻
+        assertEquals(Arrays.asList(1L, 2L, 3L), index.search("苹果 手机", 10));
+        assertTrue(index.search("手机苹果壳", 10).isEmpty());
+    }
+
+    @Test
+    void searchRanksByLengthThenSoldAndKeepsTopLimit() {
+        build(item(1, "手机", 1),
+                item(2, "华为手机", 5),
+                item(3, "小米手机", 9),
+                item(4, "手机", 3));
+
+        assertEquals(Arrays.asList(4L, 1L, 3L, 2L), index.search("手机", 10));
+        assertEquals(Arrays.asList(4L, 1L), index.search("手机", 2));
+        assertTrue(index.search("手机", 0).isEmpty());
+        assertTrue(index.search("平板", 10).isEmpty());
+    }
+
+    @Test
+    void rebuildDropsTermsOfOldName() {
+        build(item(1, "旧名称", 1));
+        build(item(1, "新名称", 1));
+
+        assertTrue(index.search("旧名", 10).isEmpty());
+        assertEquals(Collections.singletonList(1L), index.search("新名", 10));
+    }
+
+    private void build(Item... items) {
+        // 按批大小2分批返回，最后一批不满时结束
+        List<Item> all = Arrays.asList(items);
+        List<List<Item>> batches = new ArrayList<>();
+        for (int from = 0; from <= all.size(); from += 2) {
+            batches.add(all.subList(from, Math.min(from + 2, all.size())));
+        }
+        when(itemMapper.selectList(any())).thenReturn(batches.get(0),
+                batches.subList(1, batches.size()).toArray(new List[0]));
+        index.initialize();
+        assertTrue(index.isReady());
+    }
+
+    private static Item item(long id, String name, int sold) {
+        return Item.builder().id(id).name(name).sold(sold).build();
+    }
+}
@@ -0,0 +1,193 @@
+package com.yccc.bytemall.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedBitmapTest {
+
+    // 数组容器与位图容器的转换阈值
+    private static final int ARRAY_MAX = 4096;
+
+    @Test
+    void addRemoveContains() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        assertTrue(bitmap.isEmpty());
+        assertTrue(bitmap.add(5));
+        assertFalse(bitmap.add(5));
+        assertTrue(bitmap.add(70000));
+        assertTrue(bitmap.contains(5));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(6));
+        assertFalse(bitmap.contains(-1));
+        assertEquals(2, bitmap.cardinality());
+        assertTrue(bitmap.remove(70000));
+        assertFalse(bitmap.remove(70000));
+        assertFalse(bitmap.remove(-1));
+        assertTrue(bitmap.remove(5));
+        assertTrue(bitmap.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+    }
+
+    @Test
+    void convertsBetweenArrayAndBitmapContainers() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        // 超过阈值后转为位图容器
+        for (int i = 0; i <= ARRAY_MAX; i++) {
+            assertTrue(bitmap.add(i * 3));
+        }
+        assertEquals(ARRAY_MAX + 1, bitmap.cardinality());
+        for (int i = 0; i <= ARRAY_MAX; i++) {
+            assertTrue(bitmap.contains(i * 3));
+            assertFalse(bitmap.contains(i * 3 + 1));
+        }
+        // 删除一个后回到数组容器，内容不变
+        assertTrue(bitmap.remove(0));
+        assertEquals(ARRAY_MAX, bitmap.cardinality());
+        assertFalse(bitmap.contains(0));
+        assertArrayEquals(expected(3, ARRAY_MAX, 10), bitmap.slice(0, 10));
+        assertArrayEquals(new int[]{3 * ARRAY_MAX}, bitmap.after(3 * ARRAY_MAX - 1, 10));
+        // 再次越过阈值
+        assertTrue(bitmap.add(1));
+        assertTrue(bitmap.contains(1));
+        assertEquals(ARRAY_MAX + 1, bitmap.cardinality());
+        assertArrayEquals(new int[]{1, 3, 6}, bitmap.slice(0, 3));
+    }
+
+    @Test
+    void andAcrossContainerTypes() {
+        CompressedBitmap dense = new CompressedBitmap();
+        CompressedBitmap evens = new CompressedBitmap();
+        CompressedBitmap sparse = new CompressedBitmap();
+        for (int i = 0; i < 65536 * 2; i++) {
+            dense.add(i);
+            if (i % 2 == 0) {
+                evens.add(i);
+            }
+        }
+        for (int i = 0; i < 65536 * 3; i += 1000) {
+            sparse.add(i);
+        }
+        // 位图 & 位图
+        CompressedBitmap denseAndEvens = dense.and(evens);
+        assertEquals(65536, denseAndEvens.cardinality());
+        assertTrue(denseAndEvens.contains(65536));
+        assertFalse(denseAndEvens.contains(65537));
+        // 位图 & 数组，结果为两者的公共部分
+        assertEquals(intersection(toSet(evens), toSet(sparse)), toSet(evens.and(sparse)));
+        assertEquals(intersection(toSet(sparse), toSet(evens)), toSet(sparse.and(evens)));
+        // 数组 & 数组
+        CompressedBitmap other = new CompressedBitmap();
+        other.add(0);
+        other.add(2000);
+        other.add(2001);
+        other.add(200000);
+        assertArrayEquals(new int[]{0, 2000}, sparse.and(other).slice(0, 10));
+        // 没有公共高位的容器
+        CompressedBitmap far = new CompressedBitmap();
+        far.add(65536 * 10);
+        assertTrue(dense.and(far).isEmpty());
+        // 求交集不修改原位图
+        assertEquals(65536 * 2, dense.cardinality());
+    }
+
+    @Test
+    void sliceAcrossContainers() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        List<Integer> values = new ArrayList<>();
+        for (int high = 0; high < 3; high++) {
+            // 第二个容器为位图容器，其余为数组容器
+            int count = high == 1 ? ARRAY_MAX + 100 : 10;
+            for (int low = 0; low < count; low++) {
+                int value = (high << 16) | (low * 7);
+                bitmap.add(value);
+                values.add(value);
+            }
+        }
+        assertArrayEquals(toArray(values.subList(0, 5)), bitmap.slice(0, 5));
+        assertArrayEquals(toArray(values.subList(8, 20)), bitmap.slice(8, 12));
+        int bitmapEnd = 10 + ARRAY_MAX + 100;
+        assertArrayEquals(toArray(values.subList(bitmapEnd - 3, bitmapEnd + 4)), bitmap.slice(bitmapEnd - 3, 7));
+        assertArrayEquals(toArray(values.subList(values.size() - 2, values.size())), bitmap.slice(values.size() - 2, 10));
+        assertEquals(0, bitmap.slice(values.size(), 10).length);
+        assertEquals(0, bitmap.slice(0, 0).length);
+        assertEquals(0, bitmap.slice(0, -5).length);
+    }
+
+    @Test
+    void afterAcrossContainers() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i <= ARRAY_MAX; i++) {
+            bitmap.add(i);
+        }
+        bitmap.add(65535);
+        bitmap.add(3 << 16);
+        bitmap.add((3 << 16) + 1);
+        assertArrayEquals(new int[]{0, 1}, bitmap.after(-1, 2));
+        assertArrayEquals(new int[]{ARRAY_MAX, 65535, 3 << 16}, bitmap.after(ARRAY_MAX - 1, 3));
+        // 起点所在的高位没有容器
+        assertArrayEquals(new int[]{3 << 16, (3 << 16) + 1}, bitmap.after(2 << 16, 5));
+        assertArrayEquals(new int[0], bitmap.after((3 << 16) + 1, 5));
+        assertArrayEquals(new int[0], bitmap.after(Integer.MAX_VALUE, 5));
+        assertArrayEquals(new int[0], bitmap.after(0, 0));
+        assertArrayEquals(new int[0], bitmap.after(0, -1));
+    }
+
+    @Test
+    void matchesReferenceSet() {
+        Random random = new Random(42);
+        CompressedBitmap bitmap = new CompressedBitmap();
+        TreeSet<Integer> reference = new TreeSet<>();
+        for (int i = 0; i < 50000; i++) {
+            // 集中在少数几个高位上，使容器在两种形式之间来回转换
+            int value = random.nextInt(4) * 65536 + random.nextInt(12000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(value), bitmap.remove(value));
+            } else {
+                assertEquals(reference.add(value), bitmap.add(value));
+            }
+        }
+        assertEquals(reference.size(), bitmap.cardinality());
+        List<Integer> sorted = new ArrayList<>(reference);
+        List<Integer> iterated = new ArrayList<>();
+        bitmap.forEach(iterated::add);
+        assertEquals(sorted, iterated);
+        for (int offset = 0; offset < sorted.size(); offset += 997) {
+            assertArrayEquals(toArray(sorted.subList(offset, Math.min(sorted.size(), offset + 50))),
+                    bitmap.slice(offset, 50), "offset " + offset);
+            int after = sorted.get(offset);
+            SortedSet<Integer> tail = reference.tailSet(after, false);
+            assertArrayEquals(toArray(tail.stream().limit(50).collect(Collectors.toList())),
+                    bitmap.after(after, 50), "after " + after);
+        }
+    }
+
+    private static int[] expected(int step, int count, int limit) {
+        int[] values = new int[Math.min(count, limit)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i + 1) * step;
+        }
+        return values;
+    }
+
+    private static Set<Integer> toSet(CompressedBitmap bitmap) {
+        Set<Integer> set = new HashSet<>();
+        for (int value : bitmap.slice(0, (int) bitmap.cardinality())) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    private static Set<Integer> intersection(Set<Integer> a, Set<Integer> b) {
+        Set<Integer> result = new HashSet<>(a);
+        result.retainAll(b);
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,97 @@
+package com.yccc.bytemall.util;
+
+import com.yccc.bytemall.entity.dto.ItemDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ItemRecordReaderTest {
+
+    @Test
+    void readsNdjson() throws IOException {
+        ItemRecordReader reader = reader(ItemRecordReader.Format.NDJSON,
+                "{\"name\":\"a\",\"price\":100,\"category\":[\"x\"],\"unknown\":1}\n"
+                        + "\n"
+                        + "{\"name\":\"b\",\"stock\":5}\n");
+        ItemRecordReader.Record first = reader.next();
+        assertEquals(1, first.getLine());
+        assertNull(first.getError());
+        assertEquals("a", first.getItem().getName());
+        assertEquals(100, first.getItem().getPrice());
+        assertEquals(Arrays.asList("x"), first.getItem().getCategory());
+        ItemRecordReader.Record second = reader.next();
+        assertEquals(3, second.getLine());
+        assertEquals(5, second.getItem().getStock());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void malformedLineDoesNotStopReading() throws IOException {
+        ItemRecordReader reader = reader(ItemRecordReader.Format.NDJSON, "{bad\n{\"name\":\"b\"}\n");
+        ItemRecordReader.Record first = reader.next();
+        assertNull(first.getItem());
+        assertNotNull(first.getError());
+        assertEquals("b", reader.next().getItem().getName());
+    }
+
+    @Test
+    void nullLineIsRowError() throws IOException {
+        ItemRecordReader reader = reader(ItemRecordReader.Format.NDJSON, "null\n{\"name\":\"b\"}\n");
+        ItemRecordReader.Record first = reader.next();
+        assertNull(first.getItem());
+        assertNotNull(first.getError());
+        assertEquals("b", reader.next().getItem().getName());
+    }
+
+    @Test
+    void malformedCsvHeaderStopsWithError() throws IOException {
+        ItemRecordReader reader = reader(ItemRecordReader.Format.CSV, "name,\"price\nb,1\n");
+        ItemRecordReader.Record first = reader.next();
+        assertEquals(1, first.getLine());
+        assertNull(first.getItem());
+        assertTrue(first.getError().startsWith("表头格式错误"));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void readsCsvWithQuotedFields() throws IOException {
+        ItemRecordReader reader = reader(ItemRecordReader.Format.CSV,
+                "﻿name,price,category,description,extra\n"
+                        + "\"a, b\",100,x|y,\"say \"\"hi\"\"\",ignored\n"
+                        + "c,,,,\n");
+        ItemDTO first = reader.next().getItem();
+        assertEquals("a, b", first.getName());
+        assertEquals(100, first.getPrice());
+        assertEquals(Arrays.asList("x", "y"), first.getCategory());
+        assertEquals("say \"hi\"", first.getDescription());
+        ItemRecordReader.Record second = reader.next();
+        assertEquals(3, second.getLine());
+        assertNull(second.getItem().getPrice());
+        assertTrue(second.getItem().getCategory().isEmpty());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void csvColumnCountMismatchIsRowError() throws IOException {
+        ItemRecordReader reader = reader(ItemRecordReader.Format.CSV, "name,price\na\nb,1\n");
+        ItemRecordReader.Record first = reader.next();
+        assertNull(first.getItem());
+        assertNotNull(first.getError());
+        assertEquals("b", reader.next().getItem().getName());
+    }
+
+    @Test
+    void parseCsvLineRejectsUnclosedQuote() {
+        assertEquals(Arrays.asList("a", "", "b"), ItemRecordReader.parseCsvLine("a,,b"));
+        assertThrows(IllegalArgumentException.class, () -> ItemRecordReader.parseCsvLine("\"a,b"));
+    }
+
+    private static ItemRecordReader reader(ItemRecordReader.Format format, String content) {
+        return new ItemRecordReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), format);
+    }
+}
@@ -0,0 +1,89 @@
+package com.yccc.bytemall.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCollapserTest {
+
+    @Test
+    void concurrentKeysAreLoadedInOneBatch() throws Exception {
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        RequestCollapser<Integer, String> collapser = new RequestCollapser<>(64, 200, TimeUnit.MILLISECONDS, keys -> {
+            batches.add(keys);
+            Map<Integer, String> values = new HashMap<>();
+            keys.forEach(key -> values.put(key, "v" + key));
+            return values;
+        });
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int key = i % 4;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return collapser.get(key);
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < threads; i++) {
+                assertEquals("v" + (i % 4), futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, batches.size());
+            // 同一批次内相同的key只加载一次
+            assertEquals(4, batches.get(0).size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void fullBatchIsLoadedWithoutWaitingForWindow() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        RequestCollapser<Integer, Integer> collapser = new RequestCollapser<>(2, 10, TimeUnit.SECONDS, keys -> {
+            loads.incrementAndGet();
+            Map<Integer, Integer> values = new HashMap<>();
+            keys.forEach(key -> values.put(key, key * 10));
+            return values;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(() -> collapser.get(1));
+            Future<Integer> second = executor.submit(() -> collapser.get(2));
+            assertEquals(10, first.get(2, TimeUnit.SECONDS));
+            assertEquals(20, second.get(2, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void missingKeyReturnsNull() {
+        RequestCollapser<Integer, String> collapser = new RequestCollapser<>(8, 0, TimeUnit.MILLISECONDS,
+                keys -> Collections.emptyMap());
+        assertNull(collapser.get(1));
+    }
+
+    @Test
+    void loaderFailureIsRethrown() {
+        RequestCollapser<Integer, String> collapser = new RequestCollapser<>(8, 0, TimeUnit.MILLISECONDS, keys -> {
+            throw new IllegalStateException("load failed");
+        });
+        assertThrows(IllegalStateException.class, () -> collapser.get(1));
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new RequestCollapser<Integer, String>(0, 1, TimeUnit.MILLISECONDS, keys -> null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RequestCollapser<Integer, String>(1, -1, TimeUnit.MILLISECONDS, keys -> null));
+    }
+}
@@ -0,0 +1,55 @@
+package com.yccc.bytemall.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowSketchTest {
+
+    @Test
+    void countsIncrements() {
+        SlidingWindowSketch sketch = new SlidingWindowSketch(1024, 4, 3);
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, sketch.increment(1L));
+        }
+        assertEquals(5, sketch.estimate(1L));
+        assertEquals(0, sketch.estimate(2L));
+    }
+
+    @Test
+    void neverUnderestimates() {
+        // 宽度很小，必然发生哈希冲突
+        SlidingWindowSketch sketch = new SlidingWindowSketch(8, 2, 1);
+        for (long key = 0; key < 100; key++) {
+            for (int i = 0; i <= key % 5; i++) {
+                sketch.increment(key);
+            }
+        }
+        for (long key = 0; key < 100; key++) {
+            assertTrue(sketch.estimate(key) >= key % 5 + 1, "key " + key);
+        }
+    }
+
+    @Test
+    void rotateDropsOldestBucket() {
+        SlidingWindowSketch sketch = new SlidingWindowSketch(1024, 4, 3);
+        sketch.increment(1L);
+        sketch.increment(1L);
+        sketch.rotate();
+        sketch.increment(1L);
+        sketch.rotate();
+        assertEquals(3, sketch.estimate(1L));
+        // 第一个桶被清空
+        sketch.rotate();
+        assertEquals(1, sketch.estimate(1L));
+        sketch.rotate();
+        assertEquals(0, sketch.estimate(1L));
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowSketch(0, 4, 3));
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowSketch(16, 9, 3));
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowSketch(16, 4, 0));
+    }
+}
@@ -0,0 +1,62 @@
+package com.yccc.bytemall.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    @Test
+    void expiresAfterDelay() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 4);
+        wheel.add("a", 30);
+        assertTrue(wheel.advance().isEmpty());
+        assertTrue(wheel.advance().isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.advance());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void delayLongerThanOneRound() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 4);
+        wheel.add("a", 100);
+        for (int tick = 1; tick < 10; tick++) {
+            assertTrue(wheel.advance().isEmpty(), "tick " + tick);
+        }
+        assertEquals(Collections.singletonList("a"), wheel.advance());
+    }
+
+    @Test
+    void nonPositiveDelayExpiresOnNextTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 4);
+        wheel.add("a", 0);
+        assertEquals(Collections.singletonList("a"), wheel.advance());
+    }
+
+    @Test
+    void removeAndReAdd() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 4);
+        wheel.add("a", 10);
+        assertTrue(wheel.remove("a"));
+        assertFalse(wheel.remove("a"));
+        assertTrue(wheel.advance().isEmpty());
+
+        wheel.add("b", 10);
+        // 重新添加时重新计时
+        wheel.add("b", 30);
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.advance().isEmpty());
+        assertTrue(wheel.advance().isEmpty());
+        List<String> expired = wheel.advance();
+        assertEquals(Collections.singletonList("b"), expired);
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new TimerWheel<String>(0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new TimerWheel<String>(10, 0));
+    }
+}